@@ -0,0 +1,225 @@
+package bguspl.set;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * The card images, packed into sprite sheets: each card is drawn as a sub-rectangle of a sheet. The images are
+ * decoded once, in parallel, and shared by all the user interfaces in the JVM.
+ * The atlas resource (cards/atlas.dat) is generated at build time from the card images (see main): it holds the cards
+ * in a grid, one independently compressed PNG sheet per grid row, so the rows can be decoded in parallel. Cards the
+ * atlas does not hold (e.g. when it was not generated) are loaded from their own image resources, in parallel too.
+ */
+public class CardAtlas {
+
+    private static final String ATLAS_RESOURCE = "cards/atlas.dat";
+    private static final String ATLAS_FORMAT = "set-card-atlas-1";
+
+    /**
+     * The shared atlases, by the names of the images they hold.
+     */
+    private static final Map<String, CardAtlas> shared = new HashMap<>();
+
+    /**
+     * The sprite sheets, and the sheet and position of each image.
+     */
+    private BufferedImage[] sheets;
+    private final int[] sheet;
+    private final int[] x;
+    private final int[] y;
+    private final int[] width;
+    private final int[] height;
+
+    private CardAtlas(int images) {
+        sheet = new int[images];
+        x = new int[images];
+        y = new int[images];
+        width = new int[images];
+        height = new int[images];
+    }
+
+    /**
+     * Returns the shared atlas of the specified images, loading it on first use.
+     *
+     * @param names - the names of the images (e.g. "0120" for cards/0120.png).
+     * @return - the atlas, in which image i is names[i].
+     */
+    public static CardAtlas shared(String[] names) {
+        String key = String.join(",", names);
+        synchronized (shared) {
+            return shared.computeIfAbsent(key, ignored -> load(names));
+        }
+    }
+
+    /**
+     * Draws an image of the atlas.
+     *
+     * @param g        - the graphics to draw with.
+     * @param image    - the index of the image.
+     * @param x        - the x coordinate to draw the image at.
+     * @param y        - the y coordinate to draw the image at.
+     * @param observer - the object to notify about the drawing.
+     */
+    public void draw(Graphics g, int image, int x, int y, ImageObserver observer) {
+        int sx = this.x[image];
+        int sy = this.y[image];
+        g.drawImage(sheets[sheet[image]], x, y, x + width[image], y + height[image],
+                sx, sy, sx + width[image], sy + height[image], observer);
+    }
+
+    private static CardAtlas load(String[] names) {
+        CardAtlas atlas = new CardAtlas(names.length);
+        boolean[] packed = new boolean[names.length];
+        BufferedImage[] rows = new BufferedImage[0];
+        try (InputStream is = CardAtlas.class.getClassLoader().getResourceAsStream(ATLAS_RESOURCE)) {
+            if (is != null) rows = atlas.readAtlas(new DataInputStream(is), names, packed);
+        } catch (IOException | UncheckedIOException e) {
+            Arrays.fill(packed, false); // the images are loaded one by one below
+        }
+
+        // the images the atlas does not hold are sheets of their own (after the atlas rows)
+        int first = rows.length;
+        atlas.sheets = Arrays.copyOf(rows, first + names.length);
+        IntStream.range(0, names.length).parallel().filter(i -> !packed[i]).forEach(i -> {
+            BufferedImage image = readImage("cards/" + names[i] + ".png");
+            atlas.sheets[first + i] = image;
+            atlas.sheet[i] = first + i;
+            atlas.width[i] = image.getWidth();
+            atlas.height[i] = image.getHeight();
+        });
+        return atlas;
+    }
+
+    /**
+     * Reads the atlas resource: decodes its sheets in parallel, and places the images it holds.
+     *
+     * @param in     - the atlas resource.
+     * @param names  - the names of the images.
+     * @param packed - set to true for each image found in the atlas.
+     * @return - the decoded sheets (the grid rows).
+     */
+    private BufferedImage[] readAtlas(DataInputStream in, String[] names, boolean[] packed) throws IOException {
+        if (!in.readUTF().equals(ATLAS_FORMAT)) return new BufferedImage[0];
+        int cellWidth = in.readInt();
+        int cellHeight = in.readInt();
+        int columns = in.readInt();
+        Map<String, Integer> cells = new HashMap<>();
+        int count = in.readInt();
+        for (int cell = 0; cell < count; cell++)
+            cells.put(in.readUTF(), cell);
+        byte[][] rows = new byte[in.readInt()][];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = new byte[in.readInt()];
+            in.readFully(rows[row]);
+        }
+
+        BufferedImage[] decoded = new BufferedImage[rows.length];
+        IntStream.range(0, rows.length).parallel().forEach(row -> {
+            try {
+                decoded[row] = ImageIO.read(new ByteArrayInputStream(rows[row]));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        for (int i = 0; i < names.length; i++) {
+            Integer cell = cells.get(names[i]);
+            if (cell == null || cell / columns >= decoded.length) continue;
+            sheet[i] = cell / columns;
+            x[i] = (cell % columns) * cellWidth;
+            y[i] = 0;
+            width[i] = cellWidth;
+            height[i] = cellHeight;
+            packed[i] = true;
+        }
+        return decoded;
+    }
+
+    private static BufferedImage readImage(String resource) {
+        try (InputStream is = CardAtlas.class.getClassLoader().getResourceAsStream(resource)) {
+            if (is == null) throw new FileNotFoundException(resource);
+            return ImageIO.read(is);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Generates the atlas resource (at build time): packs all the card images of a directory, which must have the same
+     * size, into a grid of about square shape, one PNG sheet per grid row.
+     *
+     * @param args - the card images directory, and the atlas file to write.
+     */
+    public static void main(String[] args) throws IOException {
+        File[] files = new File(args[0]).listFiles((dir, name) -> name.endsWith(".png"));
+        if (files == null || files.length == 0) throw new FileNotFoundException(args[0] + " has no card images");
+        Arrays.sort(files);
+        BufferedImage[] images = new BufferedImage[files.length];
+        IntStream.range(0, files.length).parallel().forEach(i -> {
+            try {
+                images[i] = ImageIO.read(files[i]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        int cellWidth = images[0].getWidth();
+        int cellHeight = images[0].getHeight();
+        for (int i = 0; i < images.length; i++)
+            if (images[i].getWidth() != cellWidth || images[i].getHeight() != cellHeight)
+                throw new IllegalArgumentException(files[i] + " is not " + cellWidth + "x" + cellHeight);
+
+        int columns = (int) Math.ceil(Math.sqrt(images.length));
+        int rows = (images.length + columns - 1) / columns;
+        byte[][] sheets = new byte[rows][];
+        IntStream.range(0, rows).parallel().forEach(row -> {
+            BufferedImage sheet = new BufferedImage(columns * cellWidth, cellHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = sheet.createGraphics();
+            for (int column = 0; column < columns && row * columns + column < images.length; column++)
+                g.drawImage(images[row * columns + column], column * cellWidth, 0, null);
+            g.dispose();
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            try {
+                ImageIO.write(sheet, "png", png);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            sheets[row] = png.toByteArray();
+        });
+
+        File atlas = new File(args[1]);
+        //noinspection ResultOfMethodCallIgnored
+        atlas.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(atlas.toPath()))) {
+            out.writeUTF(ATLAS_FORMAT);
+            out.writeInt(cellWidth);
+            out.writeInt(cellHeight);
+            out.writeInt(columns);
+            out.writeInt(files.length);
+            for (File file : files)
+                out.writeUTF(file.getName().substring(0, file.getName().length() - ".png".length()));
+            out.writeInt(rows);
+            for (byte[] sheet : sheets) {
+                out.writeInt(sheet.length);
+                out.write(sheet);
+            }
+        }
+        System.out.println("packed " + files.length + " card images into " + atlas);
+    }
+}
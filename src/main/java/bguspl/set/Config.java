@@ -21,6 +21,16 @@ public class Config {
     public final long randomSpinMin;
     public final long randomSpinMax;
 
+    /**
+     * The number of events the asynchronous event log buffers (user interface calls and key presses)
+     */
+    public final int logBufferSize;
+
+    /**
+     * Whether threads wait for room when the event log buffer is full (otherwise their events are dropped)
+     */
+    public final boolean logBlockWhenFull;
+
     /**
      * The number of features on the cards (e.g. shape, color etc.)
      */
@@ -81,11 +91,38 @@ public class Config {
      */
     public final long tableDelayMillis;
 
+    /**
+     * The table's readers-writer lock implementation ("monitor" or "stamped")
+     */
+    public final String tableLock;
+
+    /**
+     * Whether to run the dealer and players on virtual threads (requires Java 21 or later)
+     */
+    public final boolean virtualThreads;
+
+    /**
+     * Whether to run the game on a simulated clock that skips ahead whenever all the game's threads wait (for headless
+     * games: the user interface timer shows the system time)
+     */
+    public final boolean virtualClock;
+
     /**
      * The number of milliseconds to pause at the end of the game before closing
      */
     public final long endGamePauseMillies;
 
+    /**
+     * The number of threads the games of a game host may use at a time (a game uses one for its dealer, one for each
+     * player and one for each computer player), which bounds the number of games it runs at a time
+     */
+    public final int hostThreads;
+
+    /**
+     * The number of games a game host admits to wait for a worker (more games are rejected)
+     */
+    public final int hostQueuedGames;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -107,6 +144,16 @@ public class Config {
      */
     public final int tableSize;
 
+    /**
+     * The number of extra columns the table may temporarily grow by when there is no legal set on it (0 to disable)
+     */
+    public final int overflowColumns;
+
+    /**
+     * The total number of cells in the table grid, including the overflow columns
+     */
+    public final int maxTableSize;
+
     /**
      * The width (in pixels) of each cell
      */
@@ -138,6 +185,7 @@ public class Config {
      * 1. This should correspond to the number of human players and the dimensions of the table card grid (i.e. the
      * first n codes are for the first row, the 2nd n codes are for the 2nd row etc., n being the number of columns).
      * 2. If the number of entries here does not match the number of human players a warning will be issued
+     * 3. Keys for the overflow slots (if any) follow the grid keys, column by column.
      */
     private final int[][] playerKeys;
 
@@ -148,6 +196,12 @@ public class Config {
             "81,87,69,82,65,83,68,70,90,88,67,86",
             "85,73,79,80,74,75,76,59,77,44,46,47"};
 
+    /**
+     * The default scan codes of the first overflow column (top to bottom), next to the default grid keys: T, G, B for
+     * the first player and Y, H, N for the second
+     */
+    private static final String[] playerOverflowKeysDefaults = {"84,71,66", "89,72,78"};
+
     /**
      * Attempts to read the config properties from the current working directory. Otherwise, tries to load them
      * as a resource.
@@ -186,6 +240,8 @@ public class Config {
         Level logLevel = Level.parse(properties.getProperty("LogLevel", "ALL"));
         String logFormat = properties.getProperty("LogFormat", "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
         Main.setLoggerLevelAndFormat(logger, logLevel, logFormat);
+        logBufferSize = Integer.parseInt(properties.getProperty("LogBufferSize", "8192"));
+        logBlockWhenFull = Boolean.parseBoolean(properties.getProperty("LogBlockWhenFull", "False"));
 
         // for debugging
         randomSpinMin = Long.parseLong(properties.getProperty("RandomSpinMin", "0"));
@@ -209,8 +265,15 @@ public class Config {
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
+        tableLock = properties.getProperty("TableLock", "monitor").trim();
+        virtualThreads = Boolean.parseBoolean(properties.getProperty("VirtualThreads", "False"));
+        virtualClock = Boolean.parseBoolean(properties.getProperty("VirtualClock", "False"));
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
 
+        // game host settings
+        hostThreads = Integer.parseInt(properties.getProperty("HostThreads", "512"));
+        hostQueuedGames = Integer.parseInt(properties.getProperty("HostQueuedGames", "1024"));
+
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
         playerNames = new String[players];
@@ -219,6 +282,8 @@ public class Config {
         rows = Integer.parseInt(properties.getProperty("Rows", "3"));
         columns = Integer.parseInt(properties.getProperty("Columns", "4"));
         tableSize = rows * columns;
+        overflowColumns = Integer.parseInt(properties.getProperty("OverflowColumns", "0"));
+        maxTableSize = rows * (columns + overflowColumns);
         cellWidth = Integer.parseInt(properties.getProperty("CellWidth", "258"));
         cellHeight = Integer.parseInt(properties.getProperty("CellHeight", "167"));
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
@@ -226,16 +291,20 @@ public class Config {
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
 
         // keyboard input data
-        playerKeys = new int[players][rows * columns];
+        playerKeys = new int[players][maxTableSize];
         for (int i = 0; i < players; i++) {
             String defaultCodes = "";
             if (i < 2) defaultCodes = playerKeysDefaults[i];
             String playerKeysString = properties.getProperty("PlayerKeys" + (i + 1), defaultCodes);
+            if (i < 2 && overflowColumns > 0 && rows == 3 && playerKeysString.replace(" ", "").equals(playerKeysDefaults[i]))
+                playerKeysString += "," + playerOverflowKeysDefaults[i];
             if (playerKeysString.length() > 0) {
                 String[] codes = playerKeysString.split(",");
-                if (codes.length != tableSize)
+                if (codes.length < tableSize || codes.length > maxTableSize)
                     logger.severe("warning: player " + (i + 1) + " keys (" + codes.length + ") mismatch table size (" + tableSize + ").");
-                for (int j = 0; j < Math.min(codes.length, tableSize); ++j) // parse the key codes string
+                else if (codes.length < maxTableSize && i < humanPlayers)
+                    logger.severe("warning: player " + (i + 1) + " has no keys for " + (maxTableSize - codes.length) + " overflow slots (" + maxTableSize + " slots).");
+                for (int j = 0; j < Math.min(codes.length, maxTableSize); ++j) // parse the key codes string
                     playerKeys[i][j] = Integer.parseInt(codes[j]);
             }
         }
@@ -8,11 +8,23 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final GameThreads threads;
+    public final GameClock clock;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, config.virtualClock ? new VirtualClock() : new SystemClock());
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, GameClock clock) {
+        this(logger, config, ui, util, new GameThreads(logger, config.virtualThreads, clock), clock);
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, GameThreads threads, GameClock clock) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.threads = threads;
+        this.clock = clock;
     }
 }
@@ -0,0 +1,257 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * An asynchronous log for the game's frequent events (user interface calls, key presses). An event is recorded into a
+ * preallocated ring buffer as a constant format and its numeric arguments, so recording it builds no string; a
+ * background writer thread formats the events and passes them on to the logger. When the buffer is full, new events
+ * are dropped (and counted), or, if configured, their threads wait for room.
+ */
+public class EventLog {
+
+    /**
+     * The recorded events (the buffer length is a power of 2).
+     */
+    private final Event[] events;
+    private final int mask;
+
+    /**
+     * The sequence number of the next event to record.
+     */
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * The sequence number of the next event to write.
+     */
+    private volatile long written;
+
+    /**
+     * The number of events dropped because the buffer was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Logger logger;
+
+    /**
+     * True iff the threads recording events wait for room when the buffer is full (instead of dropping their events).
+     */
+    private final boolean blockWhenFull;
+
+    /**
+     * The writer thread, and whether it is parked waiting for events.
+     */
+    private final Thread writer;
+    private volatile boolean idle;
+
+    private volatile boolean closed;
+
+    /**
+     * The class constructor. Starts the writer thread.
+     *
+     * @param logger        - the logger the events are written to.
+     * @param capacity      - the number of events the buffer holds (rounded up to a power of 2).
+     * @param blockWhenFull - true iff threads should wait for room when the buffer is full, false to drop the events.
+     */
+    public EventLog(Logger logger, int capacity, boolean blockWhenFull) {
+        this.logger = logger;
+        this.blockWhenFull = blockWhenFull;
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        events = new Event[size];
+        for (int i = 0; i < size; ++i)
+            events[i] = new Event(i - size);
+        mask = size - 1;
+        writer = new Thread(this::write, "event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param level - a message level.
+     * @return - true iff messages of the level are logged (so callers may skip preparing them otherwise).
+     */
+    public boolean isLoggable(Level level) {
+        return logger.isLoggable(level);
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param level  - the event's level.
+     * @param format - the event's message format (as in String.format, with %d for the arguments). Must be a constant.
+     * @param arg0   - the first argument of the format.
+     * @param arg1   - the second argument of the format.
+     */
+    public void log(Level level, String format, long arg0, long arg1) {
+        if (!logger.isLoggable(level)) return;
+        Event event = claim();
+        if (event == null) return;
+        event.level = level;
+        event.millis = System.currentTimeMillis();
+        event.format = format;
+        event.arg0 = arg0;
+        event.arg1 = arg1;
+        publish(event);
+    }
+
+    public void log(Level level, String format, long arg0) {
+        log(level, format, arg0, 0);
+    }
+
+    /**
+     * Records an event with a ready message (for the rare events whose message cannot be a constant format).
+     *
+     * @param level   - the event's level.
+     * @param message - the event's message.
+     */
+    public void log(Level level, String message) {
+        if (!logger.isLoggable(level)) return;
+        Event event = claim();
+        if (event == null) return;
+        event.level = level;
+        event.millis = System.currentTimeMillis();
+        event.format = null;
+        event.message = message;
+        publish(event);
+    }
+
+    /**
+     * @return - the number of events dropped because the buffer was full.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Waits until all the recorded events are written, then stops the writer thread. Events recorded later are dropped.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ignored) {}
+    }
+
+    /**
+     * Claims the buffer place of the next event.
+     *
+     * @return - the event to fill, or null if the event is dropped.
+     */
+    private Event claim() {
+        while (true) {
+            long sequence = next.get();
+            if (closed) {
+                dropped.incrementAndGet();
+                return null;
+            }
+            if (sequence - written >= events.length) {
+                if (!blockWhenFull) {
+                    dropped.incrementAndGet();
+                    return null;
+                }
+                wakeWriter();
+                Thread.yield();
+            } else if (next.compareAndSet(sequence, sequence + 1)) {
+                Event event = events[(int) sequence & mask];
+                event.claimed = sequence;
+                return event;
+            }
+        }
+    }
+
+    private void publish(Event event) {
+        event.sequence = event.claimed;
+        wakeWriter();
+    }
+
+    private void wakeWriter() {
+        if (idle) {
+            idle = false;
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * The writer thread's loop: writes the events in their order, and parks while there are none.
+     */
+    private void write() {
+        long reported = 0;
+        while (true) {
+            Event event = events[(int) written & mask];
+            if (event.sequence != written) {
+                if (closed && next.get() == written) break;
+                idle = true;
+                if (event.sequence != written && !closed) LockSupport.park(this);
+                idle = false;
+                continue;
+            }
+            LogRecord record = new EventRecord(event.level, event.format == null ? event.message
+                    : String.format(event.format, event.arg0, event.arg1), event.millis);
+            record.setLoggerName(logger.getName());
+            event.message = null;
+            written = written + 1; // only the writer thread writes it
+            logger.log(record);
+            long lost = dropped.get();
+            if (lost != reported) {
+                logger.warning((lost - reported) + " log events were dropped (the event log buffer was full)");
+                reported = lost;
+            }
+        }
+    }
+
+    /**
+     * @param record - a log record.
+     * @return - the time the record's event happened at: when it was recorded for the records written by an event log
+     *           (rather than when the writer thread got to it), the record's own time otherwise.
+     */
+    public static long millis(LogRecord record) {
+        return record instanceof EventRecord ? ((EventRecord) record).eventMillis : record.getMillis();
+    }
+
+    /**
+     * A log record of an event, with the time the event was recorded at (see millis).
+     */
+    private static class EventRecord extends LogRecord {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long eventMillis;
+
+        private EventRecord(Level level, String message, long eventMillis) {
+            super(level, message);
+            this.eventMillis = eventMillis;
+        }
+    }
+
+    /**
+     * A place in the buffer for an event.
+     */
+    private static class Event {
+
+        /**
+         * The sequence number of the event it holds (once the event is filled in).
+         */
+        private volatile long sequence;
+
+        /**
+         * The sequence number of the event being filled in.
+         */
+        private long claimed;
+
+        private Level level;
+        private long millis;
+        private String format;
+        private String message;
+        private long arg0;
+        private long arg1;
+
+        private Event(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package bguspl.set;
+
+/**
+ * This interface is the game's source of time: the dealer, the players and the table read the time and wait through
+ * it, so a game can run on the system clock or on a simulated one.
+ */
+public interface GameClock {
+
+    /**
+     * @return - the current time, in milliseconds (like System.currentTimeMillis).
+     */
+    long currentTimeMillis();
+
+    /**
+     * Sleeps for the specified number of milliseconds (like Thread.sleep).
+     *
+     * @param millies - the milliseconds to sleep.
+     * @throws InterruptedException - if the thread is interrupted while sleeping.
+     */
+    void sleep(long millies) throws InterruptedException;
+
+    /**
+     * Parks the current thread until the specified deadline (like LockSupport.parkUntil): it may return earlier, when
+     * the thread is unparked or interrupted (or spuriously), so callers check their condition in a loop.
+     *
+     * @param blocker  - the object the thread is blocked on.
+     * @param deadline - the time (as returned by currentTimeMillis) to park until.
+     */
+    void parkUntil(Object blocker, long deadline);
+
+    /**
+     * Registers a game thread, so the clock knows when it is running (the threads that wait on the clock are
+     * registered anyway).
+     *
+     * @param thread - the thread.
+     */
+    void register(Thread thread);
+}
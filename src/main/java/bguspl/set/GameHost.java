@@ -0,0 +1,320 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+
+/**
+ * This class hosts many independent games in one JVM. Each game gets its own environment (with a headless user
+ * interface), table, dealer and players, and its dealer runs on a worker of a shared, bounded pool. The pool only has
+ * as many workers as there are games whose threads (dealer, players and computer players) fit in config.hostThreads,
+ * and a game is only admitted if a worker or a queue place is free for it.
+ */
+public class GameHost {
+
+    private final Logger logger;
+    private final Config config;
+
+    /**
+     * The workers the games' dealers run on (at most config.hostThreads / threadsPerGame games run at a time, and at most
+     * config.hostQueuedGames more wait for a worker).
+     */
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * The games that are running.
+     */
+    private final Set<Game> running = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger nextGameId = new AtomicInteger();
+    private final AtomicLong completedGames = new AtomicLong();
+
+    /**
+     * The time (as returned by System.nanoTime) the host was created at.
+     */
+    private final long startTime = System.nanoTime();
+
+    /**
+     * True iff the host is shut down (no more games are admitted, and the running games are terminated).
+     */
+    private volatile boolean shutdown;
+
+    /**
+     * The class constructor.
+     *
+     * @param logger - the logger all the hosted games log to.
+     * @param config - the configuration all the hosted games are played by.
+     */
+    public GameHost(Logger logger, Config config) {
+        this.logger = logger;
+        this.config = config;
+        int gameThreads = threadsPerGame(config);
+        if (config.hostThreads < gameThreads)
+            logger.severe("warning: a game uses " + gameThreads + " threads, more than the " + config.hostThreads
+                    + " threads of the host; running one game at a time");
+        int maxGames = Math.max(1, config.hostThreads / gameThreads);
+        AtomicInteger workerId = new AtomicInteger();
+        workers = new ThreadPoolExecutor(maxGames, maxGames, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.hostQueuedGames)),
+                task -> new Thread(task, "host-worker-" + workerId.getAndIncrement()));
+        if (config.humanPlayers > 0)
+            logger.severe("warning: hosting games with human players, who have no user interface");
+    }
+
+    /**
+     * Admits a new game: the game is created and played once a worker is free.
+     *
+     * @return - the winners of the game (the ids of its players with the highest score), once it is over. The future is
+     *           cancelled if the host shuts down before the game starts.
+     * @throws RejectedExecutionException - if the host is shut down, or all its workers and queue places are taken.
+     */
+    public CompletableFuture<int[]> submit() {
+        if (shutdown) throw new RejectedExecutionException("the game host is shut down");
+        Game game = new Game(nextGameId.getAndIncrement());
+        workers.execute(game);
+        return game.winners;
+    }
+
+    /**
+     * @param config - a game configuration.
+     * @return - the number of threads a game of the configuration uses: one for its dealer, one for each player and one
+     *           for each computer player.
+     */
+    public static int threadsPerGame(Config config) {
+        return 1 + config.players + (config.players - config.humanPlayers);
+    }
+
+    /**
+     * @return - the number of games the host runs at a time.
+     */
+    public int maxRunningGames() {
+        return workers.getMaximumPoolSize();
+    }
+
+    /**
+     * @return - the number of games that are running.
+     */
+    public int runningGames() {
+        return running.size();
+    }
+
+    /**
+     * @return - the number of games that wait for a worker.
+     */
+    public int queuedGames() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * @return - the number of games that are over.
+     */
+    public long completedGames() {
+        return completedGames.get();
+    }
+
+    /**
+     * @return - the number of games completed per second since the host was created.
+     */
+    public double gamesPerSecond() {
+        long elapsed = System.nanoTime() - startTime;
+        return elapsed <= 0 ? 0 : completedGames.get() * 1e9 / elapsed;
+    }
+
+    /**
+     * Logs the number of running, queued and completed games and the throughput of the host.
+     */
+    public void report() {
+        logger.severe(String.format("host: %d games running, %d queued, %d completed (%.2f games/s)",
+                runningGames(), queuedGames(), completedGames(), gamesPerSecond()));
+    }
+
+    /**
+     * Shuts the host down: stops admitting games, cancels the games that wait for a worker, terminates the running
+     * games and waits for their workers to finish.
+     *
+     * @throws InterruptedException - if interrupted while waiting for the workers.
+     */
+    public void shutdown() throws InterruptedException {
+        shutdown = true;
+        workers.shutdown();
+        for (Runnable queued : workers.getQueue())
+            if (workers.remove(queued)) ((Game) queued).winners.cancel(false);
+        for (Game game : running)
+            game.dealer.terminate();
+        while (!workers.awaitTermination(1, TimeUnit.SECONDS))
+            report();
+    }
+
+    /**
+     * A hosted game. Its entities are only created once a worker starts it, so waiting games take little memory.
+     */
+    private class Game implements Runnable {
+
+        private final int id;
+        private final CompletableFuture<int[]> winners = new CompletableFuture<>();
+        private volatile Dealer dealer;
+
+        private Game(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            if (shutdown) {
+                winners.cancel(false);
+                return;
+            }
+            Util util = new UtilImpl(config);
+            HeadlessUserInterface ui = new HeadlessUserInterface(winners);
+            Env env = new Env(logger, config, ui, util);
+            Player[] players = new Player[config.players];
+            Table table = new Table(env);
+            dealer = new Dealer(env, table, players);
+            for (int i = 0; i < players.length; i++)
+                players[i] = new Player(env, dealer, table, i, i < config.humanPlayers);
+
+            String name = Thread.currentThread().getName();
+            Thread.currentThread().setName("game-" + id + "-dealer");
+            running.add(this);
+            try {
+                if (!shutdown) dealer.run();
+            } catch (RuntimeException e) {
+                logger.severe("game " + id + " failed: " + e);
+                winners.completeExceptionally(e);
+            } finally {
+                running.remove(this);
+                Thread.currentThread().setName(name);
+                env.ui.dispose();
+                if (winners.isDone() && !winners.isCompletedExceptionally())
+                    completedGames.incrementAndGet();
+                else
+                    winners.cancel(false); // terminated before any winner was announced
+            }
+        }
+    }
+
+    /**
+     * A user interface that shows nothing, and only reports the winners of its game.
+     */
+    private static class HeadlessUserInterface implements UserInterface {
+
+        private final CompletableFuture<int[]> winners;
+
+        private HeadlessUserInterface(CompletableFuture<int[]> winners) {
+            this.winners = winners;
+        }
+
+        @Override
+        public void placeCard(int card, int slot) {}
+
+        @Override
+        public void removeCard(int slot) {}
+
+        @Override
+        public void placeToken(int player, int slot) {}
+
+        @Override
+        public void removeTokens() {}
+
+        @Override
+        public void removeTokens(int slot) {}
+
+        @Override
+        public void removeToken(int player, int slot) {}
+
+        @Override
+        public void applyDiff(UserInterfaceDiff diff) {}
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {}
+
+        @Override
+        public void setElapsed(long millies) {}
+
+        @Override
+        public void setCountdownDeadline(long deadline, long warnMillies) {}
+
+        @Override
+        public void setElapsedSince(long start) {}
+
+        @Override
+        public void setFreeze(int player, long millies) {}
+
+        @Override
+        public void setScore(int player, int score) {}
+
+        @Override
+        public void announceWinner(int[] players) {
+            winners.complete(players);
+        }
+
+        @Override
+        public void dispose() {}
+    }
+
+    /**
+     * Plays many headless games on one host and reports the host's throughput.
+     *
+     * @param args - the number of games to play (100 by default).
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Logger logger = Main.initLogger();
+        Config config = new Config(logger, "config.properties");
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+
+        GameHost host = new GameHost(logger, config);
+        Deque<CompletableFuture<int[]>> pending = new ArrayDeque<>();
+        for (int i = 0; i < games; ) {
+            try {
+                pending.add(host.submit());
+                ++i;
+            } catch (RejectedExecutionException e) {
+                // the host is full: wait for the oldest game before admitting more
+                CompletableFuture<int[]> oldest = pending.poll();
+                if (oldest == null) {
+                    logger.severe("the game host rejected a game while none was pending: " + e);
+                    break;
+                }
+                await(oldest, logger);
+            }
+        }
+        for (CompletableFuture<int[]> game : pending)
+            await(game, logger);
+        host.shutdown();
+        host.report();
+        System.out.printf("Played %d games (%.2f games/s)%n", host.completedGames(), host.gamesPerSecond());
+        for (Handler h : logger.getHandlers()) h.flush();
+    }
+
+    /**
+     * Waits for a hosted game to be over.
+     *
+     * @param game   - the winners of the game.
+     * @param logger - the logger to report a failed game to.
+     */
+    private static void await(CompletableFuture<int[]> game, Logger logger) {
+        try {
+            game.join();
+        } catch (CancellationException ignored) {
+            // the game was terminated before it had winners
+        } catch (CompletionException e) {
+            logger.severe("a hosted game failed: " + e.getCause());
+        }
+    }
+}
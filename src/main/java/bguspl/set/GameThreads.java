@@ -0,0 +1,76 @@
+package bguspl.set;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * This class creates the game's threads (dealer, players and computer players): platform threads, or virtual threads
+ * when they are configured and the JVM supports them (Java 21 or later).
+ */
+public class GameThreads {
+
+    /**
+     * Creates virtual threads (null if platform threads are used).
+     */
+    private final ThreadFactory virtualThreads;
+
+    /**
+     * The game clock the threads are registered with.
+     */
+    private final GameClock clock;
+
+    /**
+     * The class constructor.
+     *
+     * @param logger  - the logger to report to.
+     * @param virtual - true iff virtual threads should be used (if supported).
+     * @param clock   - the game clock to register the threads with.
+     */
+    public GameThreads(Logger logger, boolean virtual, GameClock clock) {
+        this.virtualThreads = virtual ? virtualThreadFactory(logger) : null;
+        this.clock = clock;
+    }
+
+    /**
+     * @return - true iff the game's threads are virtual threads.
+     */
+    public boolean virtual() {
+        return virtualThreads != null;
+    }
+
+    /**
+     * Creates a new (unstarted) thread.
+     *
+     * @param task - the task the thread runs.
+     * @param name - the thread's name.
+     * @return - the new thread.
+     */
+    public Thread newThread(Runnable task, String name) {
+        Thread thread;
+        if (virtualThreads == null) {
+            thread = new Thread(task, name);
+        } else {
+            thread = virtualThreads.newThread(task);
+            thread.setName(name);
+        }
+        clock.register(thread);
+        return thread;
+    }
+
+    /**
+     * Looks up the virtual threads factory (Thread.ofVirtual().factory()) by reflection, so the game still compiles
+     * for and runs on older JVMs.
+     *
+     * @param logger - the logger to report to.
+     * @return - the virtual threads factory, or null if virtual threads are not supported.
+     */
+    private static ThreadFactory virtualThreadFactory(Logger logger) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warning("virtual threads are not supported (Java 21 or later is required), using platform threads");
+            return null;
+        }
+    }
+}
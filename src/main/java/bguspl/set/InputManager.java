@@ -5,7 +5,7 @@ import bguspl.set.ex.Player;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.Arrays;
-import java.util.logging.Logger;
+import java.util.logging.Level;
 
 /**
  * This class handles the input from the keyboard, translates it to table grid slots and dispatches accordingly.
@@ -16,16 +16,17 @@ class InputManager extends KeyAdapter {
     private final Player[] players;
     int[] keyMap = new int[MAX_KEY_CODE + 1];
     int[] keyToSlot = new int[MAX_KEY_CODE + 1];
-    private final Logger logger;
+    private final EventLog log;
 
-    public InputManager(Logger logger, Config config, Player[] players) {
+    public InputManager(EventLog log, Config config, Player[] players) {
         this.players = players;
-        this.logger = logger;
+        this.log = log;
 
         // initialize the keys
         for (int player = 0; player < config.players; ++player)
             for (int i = 0; i < config.playerKeys(player).length; i++) {
                 int keyCode = config.playerKeys(player)[i];
+                if (keyCode == 0) continue; // no key for this slot (e.g. an overflow slot)
                 if (keyCode >= keyMap.length) reallocArrays(keyCode); // enlarge the array for higher key codes
                 keyMap[keyCode] = player + 1; // 1 for first player and 2 for second player
                 keyToSlot[keyCode] = i;
@@ -39,12 +40,13 @@ class InputManager extends KeyAdapter {
 
     @Override
     public void keyPressed(KeyEvent e) {
+        long time = System.nanoTime();
         // dispatch the key event to the player according to the key map
         int keyCode = e.getKeyCode();
         int player = keyMap[keyCode] - 1;
         if (player >= 0){
-            logger.severe("key " + keyCode + " was pressed by player " + (player + 1));
-            players[player].keyPressed(keyToSlot[keyCode]);
+            log.log(Level.SEVERE, "key %d was pressed by player %d", keyCode, player + 1);
+            players[player].keyPressed(keyToSlot[keyCode], time);
         }
     }
 }
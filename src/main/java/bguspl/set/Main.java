@@ -44,20 +44,22 @@ public class Main {
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
         Util util = new UtilImpl(config);
+        EventLog events = new EventLog(logger, config.logBufferSize, config.logBlockWhenFull);
+        GameClock clock = config.virtualClock ? new VirtualClock() : new SystemClock();
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
         try {
-            ui = new UserInterfaceSwing(logger, config, players);
+            ui = new UserInterfaceSwing(events, config, clock, players);
         } catch (UnsupportedOperationException | IllegalArgumentException e) {
             logger.severe("error creating swing user interface: " + e.getMessage());
             logger.severe("will try to run without user interface");
             if (config.humanPlayers > 0)
                 logger.severe("warning: running with human players with no user interface");
         }
-        ui = new UserInterfaceDecorator(logger, util, ui);
+        ui = new UserInterfaceDecorator(events, util, ui);
 
-        Env env = new Env(logger, config, ui, util);
+        Env env = new Env(logger, config, ui, util, clock);
 
         // create the game entities
         Table table = new Table(env);
@@ -66,12 +68,17 @@ public class Main {
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
 
         // start the dealer thread
-        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
-        dealerThread.startWithLog();
+        Thread dealerThread = env.threads.newThread(dealer, "dealer");
+        ThreadLogger.logStart(logger, dealerThread.getName());
+        dealerThread.start();
 
         try {
             // shutdown stuff
-            dealerThread.joinWithLog();
+            try {
+                dealerThread.join();
+            } finally {
+                ThreadLogger.logStop(logger, dealerThread.getName());
+            }
             if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
         } catch (InterruptedException ignored) {
         } finally {
@@ -79,11 +86,12 @@ public class Main {
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
             if (!xButtonPressed) env.ui.dispose();
+            events.close();
             for (Handler h : logger.getHandlers()) h.flush();
         }
     }
 
-    private static Logger initLogger() {
+    static Logger initLogger() {
 
         //just to make our log file nicer :)
         SimpleDateFormat format = new SimpleDateFormat("M-d_HH-mm-ss");
@@ -110,7 +118,7 @@ public class Main {
             // default format (with timestamp)  = "[%1$tF %1$tT] [%2$-7s] %3$s%n";
             @Override
             public synchronized String format(LogRecord lr) {
-                return String.format(format, new Date(lr.getMillis()),
+                return String.format(format, new Date(EventLog.millis(lr)),
                         lr.getLevel().getLocalizedName(), lr.getMessage()
                 );
             }
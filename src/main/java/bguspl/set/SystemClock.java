@@ -0,0 +1,27 @@
+package bguspl.set;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The game clock of the real world: the system time.
+ */
+public class SystemClock implements GameClock {
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void sleep(long millies) throws InterruptedException {
+        Thread.sleep(millies);
+    }
+
+    @Override
+    public void parkUntil(Object blocker, long deadline) {
+        LockSupport.parkUntil(blocker, deadline);
+    }
+
+    @Override
+    public void register(Thread thread) {}
+}
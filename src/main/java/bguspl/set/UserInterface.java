@@ -43,6 +43,15 @@ public interface UserInterface {
      */
     void removeToken(int player, int slot);
 
+    /**
+     * Apply a batch of card and token changes, in order, as a single update of the display.
+     * By default, the changes are applied one by one.
+     * @param diff - the changes (the caller may reuse the diff once this method returns).
+     */
+    default void applyDiff(UserInterfaceDiff diff) {
+        diff.applyTo(this);
+    }
+
     /**
      * Set the countdown time to the specified number of milliseconds.
      * @param millies - the milliseconds to be shown.
@@ -56,6 +65,21 @@ public interface UserInterface {
      */
     void setElapsed(long millies);
 
+    /**
+     * Start a countdown to the specified deadline. The user interface animates the countdown by itself until the next
+     * call to this method (or to setElapsedSince).
+     * @param deadline    - the time (as returned by the game's GameClock) at which the countdown reaches 0.
+     * @param warnMillies - the countdown is shown as a warning (see setCountdown) once this many milliseconds are left.
+     */
+    void setCountdownDeadline(long deadline, long warnMillies);
+
+    /**
+     * Start showing the time elapsed since the specified time. The user interface animates it by itself until the next
+     * call to this method (or to setCountdownDeadline).
+     * @param start - the time (as returned by the game's GameClock) to count from.
+     */
+    void setElapsedSince(long start);
+
     /**
      * Set the player text in the score panel to show remaining freeze time.
      * If milliseconds > 0, show player name in red, and add freeze time.
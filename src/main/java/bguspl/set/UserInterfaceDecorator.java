@@ -2,18 +2,18 @@ package bguspl.set;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.logging.Logger;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 public class UserInterfaceDecorator implements UserInterface {
 
-    private final Logger logger;
+    private final EventLog log;
     private final Util util;
     private final UserInterface ui;
 
-    public UserInterfaceDecorator(Logger logger, Util util, UserInterface ui) {
+    public UserInterfaceDecorator(EventLog log, Util util, UserInterface ui) {
         this.ui = ui;
-        this.logger = logger;
+        this.log = log;
         this.util = util;
 
         if (ui == null) System.out.println("running without a user interface. Check logs.");
@@ -21,84 +21,118 @@ public class UserInterfaceDecorator implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        logger.severe("placing card " + card + " in slot " + slot);
+        log.log(Level.SEVERE, "placing card %d in slot %d", card, slot);
         util.spin();
         if (ui != null) ui.placeCard(card, slot);
     }
 
     @Override
     public void removeCard(int slot) {
-        logger.severe("removing card from slot " + slot);
+        log.log(Level.SEVERE, "removing card from slot %d", slot);
         util.spin();
         if (ui != null) ui.removeCard(slot);
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        logger.severe("player " + (player + 1) + " placing token on slot " + slot);
+        log.log(Level.SEVERE, "player %d placing token on slot %d", player + 1, slot);
         util.spin();
         if (ui != null) ui.placeToken(player, slot);
     }
 
     @Override
     public void removeTokens() {
-        logger.severe("removing all tokens");
+        log.log(Level.SEVERE, "removing all tokens");
         util.spin();
         if (ui != null) ui.removeTokens();
     }
 
     @Override
     public void removeTokens(int slot) {
-        logger.severe("removing tokens from slot " + slot);
+        log.log(Level.SEVERE, "removing tokens from slot %d", slot);
         util.spin();
         if (ui != null) ui.removeTokens(slot);
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        logger.severe("removing player " + (player + 1) + " token from slot " + slot);
+        log.log(Level.SEVERE, "removing player %d token from slot %d", player + 1, slot);
         util.spin();
         if (ui != null) ui.removeToken(player, slot);
     }
 
+    @Override
+    public void applyDiff(UserInterfaceDiff diff) {
+        log.log(Level.SEVERE, "applying %d changes at once", diff.size());
+        for (int i = 0; i < diff.size(); ++i) {
+            int slot = diff.slot(i);
+            int arg = diff.arg(i);
+            switch (diff.kind(i)) {
+                case UserInterfaceDiff.PLACE_CARD: log.log(Level.SEVERE, "placing card %d in slot %d", arg, slot); break;
+                case UserInterfaceDiff.REMOVE_CARD: log.log(Level.SEVERE, "removing card from slot %d", slot); break;
+                case UserInterfaceDiff.PLACE_TOKEN: log.log(Level.SEVERE, "player %d placing token on slot %d", arg + 1, slot); break;
+                case UserInterfaceDiff.REMOVE_TOKEN: log.log(Level.SEVERE, "removing player %d token from slot %d", arg + 1, slot); break;
+                case UserInterfaceDiff.REMOVE_TOKENS: log.log(Level.SEVERE, "removing tokens from slot %d", slot); break;
+            }
+        }
+        util.spin();
+        if (ui != null) ui.applyDiff(diff);
+    }
+
     @Override
     public void setCountdown(long millies, boolean warn) {
         if (!warn || millies % 1000L == 0L)
-            logger.severe("updating countdown to " + millies);
+            log.log(Level.SEVERE, "updating countdown to %d", millies);
         if (ui != null) ui.setCountdown(millies, warn);
     }
 
     @Override
     public void setElapsed(long millies) {
-        logger.severe("updating elapsed time to " + millies);
+        log.log(Level.SEVERE, "updating elapsed time to %d", millies);
         util.spin();
         if (ui != null) ui.setElapsed(millies);
     }
 
+    @Override
+    public void setCountdownDeadline(long deadline, long warnMillies) {
+        log.log(Level.SEVERE, "counting down to %d (warning %d millies before)", deadline, warnMillies);
+        util.spin();
+        if (ui != null) ui.setCountdownDeadline(deadline, warnMillies);
+    }
+
+    @Override
+    public void setElapsedSince(long start) {
+        log.log(Level.SEVERE, "counting elapsed time since %d", start);
+        util.spin();
+        if (ui != null) ui.setElapsedSince(start);
+    }
+
     @Override
     public void setFreeze(int player, long millies) {
-        logger.severe("setting player " + (player + 1) + " freeze to " + millies);
+        log.log(Level.SEVERE, "setting player %d freeze to %d", player + 1, millies);
         util.spin();
         if (ui != null) ui.setFreeze(player, millies);
     }
 
     @Override
     public void setScore(int player, int score) {
-        logger.severe("setting player " + (player + 1) + " score to " + score);
+        log.log(Level.SEVERE, "setting player %d score to %d", player + 1, score);
         util.spin();
         if (ui != null) ui.setScore(player, score);
     }
 
     @Override
     public void announceWinner(int[] players) {
-        List<String> winners = Arrays.stream(players).mapToObj(id -> "player " + (id + 1)).collect(Collectors.toList());
-        logger.severe("announcing winner(s): " + String.join(", ", winners));
+        if (log.isLoggable(Level.SEVERE)) {
+            List<String> winners = Arrays.stream(players).mapToObj(id -> "player " + (id + 1)).collect(Collectors.toList());
+            log.log(Level.SEVERE, "announcing winner(s): " + String.join(", ", winners));
+        }
         if (ui != null) ui.announceWinner(players);
     }
 
     @Override
     public void dispose() {
-        logger.severe("disposing of user interface elements");
+        log.log(Level.SEVERE, "disposing of user interface elements");
         if (ui != null) ui.dispose();
     }
 }
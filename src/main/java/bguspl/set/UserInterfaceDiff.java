@@ -0,0 +1,88 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * A batch of card and token changes to the user interface (see UserInterface::applyDiff), kept compactly as
+ * {kind, slot, card or player} triplets of ints.
+ */
+public class UserInterfaceDiff {
+
+    /**
+     * The kinds of changes (the argument is the card for PLACE_CARD and the player for PLACE_TOKEN and REMOVE_TOKEN).
+     * REMOVE_TOKENS of slot -1 removes the tokens from all the slots.
+     */
+    public static final int PLACE_CARD = 0;
+    public static final int REMOVE_CARD = 1;
+    public static final int PLACE_TOKEN = 2;
+    public static final int REMOVE_TOKEN = 3;
+    public static final int REMOVE_TOKENS = 4;
+
+    private int[] changes = new int[3 * 16];
+    private int size;
+
+    /**
+     * Adds a change to the batch.
+     *
+     * @param kind - the kind of the change.
+     * @param slot - the slot that changes.
+     * @param arg  - the card placed, or the player whose token changes (unused otherwise).
+     */
+    public void add(int kind, int slot, int arg) {
+        if (3 * size == changes.length) changes = Arrays.copyOf(changes, 2 * changes.length);
+        changes[3 * size] = kind;
+        changes[3 * size + 1] = slot;
+        changes[3 * size + 2] = arg;
+        ++size;
+    }
+
+    /**
+     * Adds the changes of another batch to this one.
+     */
+    public void addAll(UserInterfaceDiff other) {
+        for (int i = 0; i < other.size; ++i)
+            add(other.kind(i), other.slot(i), other.arg(i));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int kind(int i) {
+        return changes[3 * i];
+    }
+
+    public int slot(int i) {
+        return changes[3 * i + 1];
+    }
+
+    public int arg(int i) {
+        return changes[3 * i + 2];
+    }
+
+    /**
+     * Applies the changes to a user interface one by one, in order.
+     *
+     * @param ui - the user interface.
+     */
+    public void applyTo(UserInterface ui) {
+        for (int i = 0; i < size; ++i) {
+            int slot = slot(i);
+            switch (kind(i)) {
+                case PLACE_CARD: ui.placeCard(arg(i), slot); break;
+                case REMOVE_CARD: ui.removeCard(slot); break;
+                case PLACE_TOKEN: ui.placeToken(arg(i), slot); break;
+                case REMOVE_TOKEN: ui.removeToken(arg(i), slot); break;
+                case REMOVE_TOKENS: if (slot == -1) ui.removeTokens(); else ui.removeTokens(slot); break;
+            }
+        }
+    }
+}
@@ -4,33 +4,79 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.FileNotFoundException;
-import java.net.URL;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
 import java.util.Arrays;
 import java.util.List;
-import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
 
 /**
  * Java Swing implementation of the UserInterface interface.
+ * The game threads do not touch the Swing components: their card, token, freeze and score changes are queued, and the
+ * EDT applies the queued changes once per frame, repainting only the cells that changed.
  */
 public class UserInterfaceSwing extends JFrame implements UserInterface {
 
+    /**
+     * The display frame period (the most often queued changes are shown).
+     */
+    private static final int FRAME_MILLIS = 16;
+
     private final TimerPanel timerPanel;
     private final GamePanel gamePanel;
     private final PlayersPanel playersPanel;
     private final WinnerPanel winnerPanel;
     private final Config config;
 
+    /**
+     * The game clock the countdown and the elapsed time are shown by.
+     */
+    private final GameClock clock;
+
+    /**
+     * Guards the queued changes below.
+     */
+    private final Object renderLock = new Object();
+
+    /**
+     * The card and token changes queued for the next frame, and the (empty) batch to swap in when it is rendered.
+     */
+    private UserInterfaceDiff queuedChanges = new UserInterfaceDiff();
+    private UserInterfaceDiff renderedChanges = new UserInterfaceDiff();
+
+    /**
+     * The latest freeze and score of each player, and whether they changed since the last frame (only the latest
+     * values are shown).
+     */
+    private final long[] queuedFreezes;
+    private final int[] queuedScores;
+    private final boolean[] playerChanged;
+
+    /**
+     * True iff a frame is scheduled to render the queued changes.
+     */
+    private boolean frameScheduled;
+
+    /**
+     * Fires on the EDT to render the queued changes.
+     */
+    private final Timer frame;
+
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
 
-    public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
+    public UserInterfaceSwing(EventLog log, Config config, GameClock clock, Player[] players) {
 
         this.config = config;
+        this.clock = clock;
+        queuedFreezes = new long[config.players];
+        queuedScores = new int[config.players];
+        playerChanged = new boolean[config.players];
+        frame = new Timer(FRAME_MILLIS, e -> renderFrame());
+        frame.setRepeats(false);
         timerPanel = new TimerPanel();
         gamePanel = new GamePanel();
         playersPanel = new PlayersPanel();
@@ -63,16 +109,93 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        addKeyListener(new InputManager(logger, config, players));
+        addKeyListener(new InputManager(log, config, players));
         addWindowListener(new WindowManager());
 
         EventQueue.invokeLater(() -> setVisible(true));
     }
 
+    /**
+     * Queues a card or token change for the next frame (called by the game threads).
+     */
+    private void queueChange(int kind, int slot, int arg) {
+        synchronized (renderLock) {
+            queuedChanges.add(kind, slot, arg);
+            scheduleFrame();
+        }
+    }
+
+    /**
+     * Schedules a frame to render the queued changes, unless one is scheduled already (called with renderLock held).
+     */
+    private void scheduleFrame() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            frame.restart();
+        }
+    }
+
+    /**
+     * Renders the changes queued since the last frame (on the EDT): the card and token changes are applied to the game
+     * panel, which then repaints the cells that changed.
+     */
+    private void renderFrame() {
+        UserInterfaceDiff changes;
+        long[] freezes = new long[config.players];
+        int[] scores = new int[config.players];
+        boolean[] changed = new boolean[config.players];
+        synchronized (renderLock) {
+            changes = queuedChanges;
+            queuedChanges = renderedChanges;
+            renderedChanges = changes;
+            for (int player = 0; player < changed.length; ++player)
+                if (playerChanged[player]) {
+                    playerChanged[player] = false;
+                    changed[player] = true;
+                    freezes[player] = queuedFreezes[player];
+                    scores[player] = queuedScores[player];
+                }
+            frameScheduled = false;
+        }
+
+        if (!changes.isEmpty()) {
+            for (int i = 0; i < changes.size(); ++i) {
+                int slot = changes.slot(i);
+                switch (changes.kind(i)) {
+                    case UserInterfaceDiff.PLACE_CARD: gamePanel.placeCard(slot, changes.arg(i)); break;
+                    case UserInterfaceDiff.REMOVE_CARD: gamePanel.removeCard(slot); break;
+                    case UserInterfaceDiff.PLACE_TOKEN: gamePanel.placeToken(changes.arg(i), slot); break;
+                    case UserInterfaceDiff.REMOVE_TOKEN: gamePanel.removeToken(changes.arg(i), slot); break;
+                    case UserInterfaceDiff.REMOVE_TOKENS:
+                        if (slot == -1) gamePanel.removeTokens();
+                        else gamePanel.removeTokens(slot);
+                        break;
+                }
+            }
+            changes.clear();
+            gamePanel.repaintChanged();
+        }
+        for (int player = 0; player < changed.length; ++player)
+            if (changed[player]) {
+                playersPanel.setFreeze(player, freezes[player]);
+                playersPanel.setScore(player, scores[player]);
+            }
+    }
+
     private class TimerPanel extends JPanel {
 
         private final JLabel timerField;
 
+        /**
+         * Fires on the EDT whenever the displayed time should change next.
+         */
+        private final Timer refresh;
+
+        private long deadline;
+        private long warnMillies;
+        private long elapsedStart;
+        private boolean elapsed;
+
         private String generateTime(long millies, boolean warn) {
             if (warn)
                 return format("Remaining Time: %.2f", (double) millies / 1000.0f);
@@ -88,6 +211,53 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             timerField.setForeground(Color.BLACK);
 
             add(timerField);
+
+            refresh = new Timer(0, e -> tick());
+            refresh.setRepeats(false);
+        }
+
+        private void startCountdown(long deadline, long warnMillies) {
+            this.deadline = deadline;
+            this.warnMillies = warnMillies;
+            elapsed = false;
+            tick();
+        }
+
+        private void startElapsed(long start) {
+            elapsedStart = start;
+            elapsed = true;
+            tick();
+        }
+
+        /**
+         * Shows the current time and schedules the next refresh for when the shown text changes.
+         */
+        private void tick() {
+            long now = clock.currentTimeMillis();
+            long next;
+            if (elapsed) {
+                long millies = Math.max(0, now - elapsedStart);
+                setElapsed(millies);
+                next = 1000 - millies % 1000;
+            } else {
+                long left = Math.max(0, deadline - now);
+                boolean warn = left <= warnMillies;
+                setCountdown(left, warn);
+                if (left == 0) {
+                    refresh.stop();
+                    return;
+                }
+                next = warn ? FRAME_MILLIS : Math.min(left - warnMillies, left % 1000 == 0 ? 1000 : left % 1000);
+            }
+            refresh.setInitialDelay((int) Math.max(1, next));
+            refresh.restart();
+        }
+
+        /**
+         * Stops animating the countdown or the elapsed time (the last shown time stays on the screen).
+         */
+        private void stop() {
+            refresh.stop();
         }
 
         private void setCountdown(long millies, boolean warn) {
@@ -100,115 +270,201 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         }
     }
 
-    private class GamePanel extends JLayeredPane {
-
-        private final Image emptyCard;
-        private final Image[] deck;
-        private final Image[][] grid;
-        private final boolean[][][] playerTokens;
-        private final JLabel[][] tokenText;
-
-        private Image loadImageResource(String filename) {
-            URL imageResource = getClass().getClassLoader().getResource(filename);
-            if (imageResource == null)
-                throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
-        }
+    /**
+     * The table grid, painted directly: the card images, the cell borders, and the names of the players with tokens on
+     * each cell. Only the cells that changed are repainted.
+     */
+    private class GamePanel extends JPanel {
+
+        /**
+         * The card images: image i is card i, and image deckSize is the empty card (shared by all the windows).
+         */
+        private final CardAtlas cards;
+        private final int emptyCard;
+
+        /**
+         * The image shown in each slot.
+         */
+        private final int[] slotImages;
+
+        /**
+         * The players with tokens on each slot: bit p % 64 of slotTokens[slot][p / 64] is set iff player p has a token
+         * on the slot.
+         */
+        private final long[][] slotTokens;
+
+        /**
+         * True iff a slot changed since it was last repainted.
+         */
+        private final boolean[] slotChanged;
+
+        /**
+         * The players' names and the separator between them, laid out once (on the first paint) in the token font.
+         */
+        private final Font tokenFont = UIManager.getFont("Label.font");
+        private final Color tokenColor = UIManager.getColor("Label.foreground");
+        private GlyphVector[] nameGlyphs;
+        private GlyphVector separatorGlyphs;
+        private float[] nameWidths;
+        private float separatorWidth;
+        private float tokenAscent;
 
         private GamePanel() {
 
-            setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
+            int columns = config.columns + config.overflowColumns;
+            setPreferredSize(new Dimension(columns * config.cellWidth, config.rows * config.cellHeight));
 
             // init deck and load all pictures from png files
             assert config.featureSize < 10; // otherwise there will be naming conflicts
 
-            // load the image resources
-            deck = new Image[config.deckSize];
+            // load the image resources (or share them, if another window loaded them)
+            String[] names = new String[config.deckSize + 1];
             for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
-            emptyCard = loadImageResource("cards/empty_card.png");
-
-            grid = new Image[config.rows][config.columns];
-            tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
-            for (int row = 0; row < config.rows; row++) {
-                for (int column = 0; column < config.columns; column++) {
-                    // init the cards on the table grid as empty cards
-                    grid[row][column] = emptyCard;
-
-                    // init the JLabel selection overlay
-                    tokenText[row][column] = new JLabel("");
-                    tokenText[row][column].setVerticalAlignment(JLabel.TOP);
-                    tokenText[row][column].setHorizontalAlignment(JLabel.CENTER);
-                    tokenText[row][column].setOpaque(false);
-                    tokenText[row][column].setBorder(BorderFactory.createLineBorder(Color.black));
-                    tokenText[row][column].setBounds((column * config.cellWidth), (row * config.cellHeight), config.cellWidth, config.cellHeight);
-                    add(tokenText[row][column]);
-                }
-            }
+                names[i] = intInBaseToPaddedString(i, config.featureCount, config.featureSize);
+            emptyCard = config.deckSize;
+            names[emptyCard] = "empty_card";
+            cards = CardAtlas.shared(names);
+
+            // init the cards on the table grid as empty cards
+            slotImages = new int[config.maxTableSize];
+            Arrays.fill(slotImages, emptyCard);
+            slotTokens = new long[config.maxTableSize][(config.players + 63) >> 6];
+            slotChanged = new boolean[config.maxTableSize];
+        }
+
+        /**
+         * The grid row of a slot (overflow slots fill the extra columns column by column).
+         */
+        private int row(int slot) {
+            if (slot < config.tableSize) return slot / config.columns;
+            return (slot - config.tableSize) % config.rows;
+        }
+
+        /**
+         * The grid column of a slot (overflow slots fill the extra columns column by column).
+         */
+        private int column(int slot) {
+            if (slot < config.tableSize) return slot % config.columns;
+            return config.columns + (slot - config.tableSize) / config.rows;
+        }
+
+        /**
+         * The slot shown in a grid cell.
+         */
+        private int slot(int row, int column) {
+            if (column < config.columns) return row * config.columns + column;
+            return config.tableSize + (column - config.columns) * config.rows + row;
         }
 
         private void placeCard(int slot, int card) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = deck[card];
-            validate();
-            repaint();
+            slotImages[slot] = card;
+            slotChanged[slot] = true;
         }
 
         private void removeCard(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = emptyCard;
-            validate();
-            repaint();
+            slotImages[slot] = emptyCard;
+            slotChanged[slot] = true;
         }
 
         private void placeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            slotTokens[slot][player >> 6] |= 1L << player;
+            slotChanged[slot] = true;
         }
 
         private void removeTokens() {
-            for (int i = 0; i < config.tableSize; i++)
+            for (int i = 0; i < config.maxTableSize; i++)
                 removeTokens(i);
         }
 
         private void removeTokens(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
-            }
+            Arrays.fill(slotTokens[slot], 0);
+            slotChanged[slot] = true;
         }
 
         private void removeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            slotTokens[slot][player >> 6] &= ~(1L << player);
+            slotChanged[slot] = true;
         }
 
-        private String generatePlayersTokenText(int row, int column) {
-            String text = "";
-            for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
-            }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
+        /**
+         * Repaints the cells of the slots that changed.
+         */
+        private void repaintChanged() {
+            for (int slot = 0; slot < slotChanged.length; slot++)
+                if (slotChanged[slot]) {
+                    slotChanged[slot] = false;
+                    repaint(column(slot) * config.cellWidth, row(slot) * config.cellHeight, config.cellWidth, config.cellHeight);
+                }
         }
 
         @Override
         public void paintComponent(Graphics g) {
-            // draw card images
-            for (int row = 0; row < config.rows; row++)
-                for (int column = 0; column < config.columns; column++)
-                    g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
+            Graphics2D g2 = (Graphics2D) g;
+            if (nameGlyphs == null) {
+                FontRenderContext context = g2.getFontRenderContext();
+                nameGlyphs = new GlyphVector[config.players];
+                nameWidths = new float[config.players];
+                for (int player = 0; player < config.players; player++) {
+                    nameGlyphs[player] = tokenFont.createGlyphVector(context, config.playerNames[player]);
+                    nameWidths[player] = (float) nameGlyphs[player].getLogicalBounds().getWidth();
+                }
+                separatorGlyphs = tokenFont.createGlyphVector(context, ", ");
+                separatorWidth = (float) separatorGlyphs.getLogicalBounds().getWidth();
+                tokenAscent = tokenFont.getLineMetrics("", context).getAscent();
+            }
+
+            // only the cells in the clip (i.e. the repainted ones) are drawn
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) clip = new Rectangle(getSize());
+            int columns = config.columns + config.overflowColumns;
+            int firstRow = Math.max(0, clip.y / config.cellHeight);
+            int lastRow = Math.min(config.rows - 1, (clip.y + clip.height - 1) / config.cellHeight);
+            int firstColumn = Math.max(0, clip.x / config.cellWidth);
+            int lastColumn = Math.min(columns - 1, (clip.x + clip.width - 1) / config.cellWidth);
+            for (int row = firstRow; row <= lastRow; row++)
+                for (int column = firstColumn; column <= lastColumn; column++)
+                    paintCell(g2, row, column);
+        }
+
+        /**
+         * Draws a grid cell: its card image, its border and the names of the players with tokens on it (centered on the
+         * top of the cell).
+         */
+        private void paintCell(Graphics2D g, int row, int column) {
+            int slot = slot(row, column);
+            int x = column * config.cellWidth;
+            int y = row * config.cellHeight;
+            cards.draw(g, slotImages[slot], x, y, this);
+            g.setColor(Color.BLACK);
+            g.drawRect(x, y, config.cellWidth - 1, config.cellHeight - 1);
+
+            long[] tokens = slotTokens[slot];
+            float width = 0;
+            boolean first = true;
+            for (int word = 0; word < tokens.length; word++)
+                for (long players = tokens[word]; players != 0; players &= players - 1) {
+                    int player = (word << 6) + Long.numberOfTrailingZeros(players);
+                    if (!first) width += separatorWidth;
+                    width += nameWidths[player];
+                    first = false;
+                }
+            if (first) return;
+
+            g.setColor(tokenColor);
+            float textX = x + (config.cellWidth - width) / 2;
+            float textY = y + 1 + tokenAscent;
+            first = true;
+            for (int word = 0; word < tokens.length; word++)
+                for (long players = tokens[word]; players != 0; players &= players - 1) {
+                    int player = (word << 6) + Long.numberOfTrailingZeros(players);
+                    if (!first) {
+                        g.drawGlyphVector(separatorGlyphs, textX, textY);
+                        textX += separatorWidth;
+                    }
+                    g.drawGlyphVector(nameGlyphs[player], textX, textY);
+                    textX += nameWidths[player];
+                    first = false;
+                }
         }
     }
 
@@ -276,63 +532,95 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        gamePanel.placeCard(slot, card);
+        queueChange(UserInterfaceDiff.PLACE_CARD, slot, card);
     }
 
     @Override
     public void removeCard(int slot) {
-        gamePanel.removeCard(slot);
+        queueChange(UserInterfaceDiff.REMOVE_CARD, slot, -1);
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        gamePanel.placeToken(player, slot);
+        queueChange(UserInterfaceDiff.PLACE_TOKEN, slot, player);
     }
 
     @Override
     public void removeTokens() {
-        gamePanel.removeTokens();
+        queueChange(UserInterfaceDiff.REMOVE_TOKENS, -1, -1);
     }
 
     @Override
     public void removeTokens(int slot) {
-        gamePanel.removeTokens(slot);
+        queueChange(UserInterfaceDiff.REMOVE_TOKENS, slot, -1);
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        gamePanel.removeToken(player, slot);
+        queueChange(UserInterfaceDiff.REMOVE_TOKEN, slot, player);
+    }
+
+    @Override
+    public void applyDiff(UserInterfaceDiff diff) {
+        synchronized (renderLock) {
+            queuedChanges.addAll(diff);
+            scheduleFrame();
+        }
     }
 
     @Override
     public void setCountdown(long millies, boolean warn) {
-        timerPanel.setCountdown(millies, warn);
+        EventQueue.invokeLater(() -> timerPanel.setCountdown(millies, warn));
     }
 
     @Override
     public void setElapsed(long millies) {
-        timerPanel.setElapsed(millies);
+        EventQueue.invokeLater(() -> timerPanel.setElapsed(millies));
+    }
+
+    @Override
+    public void setCountdownDeadline(long deadline, long warnMillies) {
+        EventQueue.invokeLater(() -> timerPanel.startCountdown(deadline, warnMillies));
+    }
+
+    @Override
+    public void setElapsedSince(long start) {
+        EventQueue.invokeLater(() -> timerPanel.startElapsed(start));
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        playersPanel.setFreeze(player, millies);
+        synchronized (renderLock) {
+            queuedFreezes[player] = millies;
+            playerChanged[player] = true;
+            scheduleFrame();
+        }
     }
 
     @Override
     public void setScore(int player, int score) {
-        playersPanel.setScore(player, score);
+        synchronized (renderLock) {
+            queuedScores[player] = score;
+            playerChanged[player] = true;
+            scheduleFrame();
+        }
     }
 
     @Override
     public void announceWinner(int[] players) {
-        playersPanel.setVisible(false);
-        winnerPanel.announceWinner(players);
-        winnerPanel.setVisible(true);
+        EventQueue.invokeLater(() -> {
+            timerPanel.stop(); // the game is over: the time no longer runs
+            playersPanel.setVisible(false);
+            winnerPanel.announceWinner(players);
+            winnerPanel.setVisible(true);
+        });
     }
 
     @Override
     public void dispose() {
+        // live timers keep posting events to the EDT (and keep AWT from shutting down)
+        timerPanel.stop();
+        frame.stop();
         super.dispose();
     }
 }
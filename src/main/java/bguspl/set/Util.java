@@ -1,6 +1,9 @@
 package bguspl.set;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
 
 /**
  * An interface for general utilities provided for convenience.
@@ -31,6 +34,38 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Checks many candidate sets in one call.
+     *
+     * @param cards   - the candidates' card ids, config.featureSize consecutive cards per candidate.
+     * @param results - an array of at least cards.length / config.featureSize entries; results[i] is set to true iff
+     *                the i-th candidate forms a legal set.
+     * @return - the number of candidates that form a legal set.
+     */
+    int testSets(int[] cards, boolean[] results);
+
+    /**
+     * Finds the card that completes the given cards into a legal set (any config.featureSize - 1 cards determine it).
+     *
+     * @param cards - config.featureSize - 1 card ids.
+     * @return - the only card id that forms a legal set with the given cards, or -1 if there is no such card (or if
+     * it is not unique, i.e. config.featureSize < 3).
+     */
+    int completeSet(int[] cards);
+
+    /**
+     * Finds the legal sets that a card forms with other cards.
+     *
+     * @param card    - the card id.
+     * @param others  - the other card ids, in increasing order (may not include card).
+     * @param count   - the number of other cards (the first count entries of others).
+     * @param present - tells whether a card id is among the other cards (the last card of each set is looked up here).
+     * @param visitor - if not null, called with each set: card first, then the rest in increasing order. Note: the
+     *                array is reused for the next sets (copy it to keep it).
+     * @return - the number of sets found.
+     */
+    long forEachSetWith(int card, int[] others, int count, IntPredicate present, Consumer<int[]> visitor);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +75,15 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Returns a lazy, sequential stream of the legal sets in the given collection of cards (in the same order as
+     * findSets). Sets are only searched for as the stream is consumed.
+     *
+     * @param deck - a collection of cards (may not include null objects).
+     * @return - a stream of integer arrays, each one contains the card ids of a legal set.
+     */
+    Stream<int[]> streamSets(List<Integer> deck);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
@@ -1,20 +1,71 @@
 package bguspl.set;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The implementation of the UserInterface interface.
  */
 public class UtilImpl implements Util {
 
+    /**
+     * Collections of at least this many cards are searched in parallel (smaller searches do not pay for the forks).
+     */
+    private static final int PARALLEL_SEARCH_CARDS = 256;
+
     private final Config config;
 
+    /**
+     * Packed card encoding: feature i of a card occupies featureSize bits starting at bit i * featureSize, with
+     * exactly one bit set (the feature's value). Null if the features do not fit in a long.
+     */
+    private final long[] packedCards;
+
+    /**
+     * The lowest, highest and all bits of every packed feature field (respectively).
+     */
+    private final long lowBits;
+    private final long highBits;
+    private final long allBits;
+
     public UtilImpl(Config config) {
         this.config = config;
+
+        if (config.featureSize * config.featureCount <= Long.SIZE) {
+            long low = 0, high = 0;
+            for (int i = 0; i < config.featureCount; ++i) {
+                low |= 1L << (i * config.featureSize);
+                high |= 1L << (i * config.featureSize + config.featureSize - 1);
+            }
+            lowBits = low;
+            highBits = high;
+            allBits = (high - low) | high;
+
+            packedCards = new long[config.deckSize];
+            for (int card = 0; card < config.deckSize; ++card) {
+                long packed = 0;
+                for (int i = 0, c = card; i < config.featureCount; ++i, c /= config.featureSize)
+                    packed |= 1L << (i * config.featureSize + c % config.featureSize);
+                packedCards[card] = packed;
+            }
+        } else {
+            packedCards = null;
+            lowBits = highBits = allBits = 0;
+        }
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -40,6 +91,53 @@ public class UtilImpl implements Util {
 
     @Override
     public boolean testSet(int[] cards) {
+        if (packedCards == null || cards.length != config.featureSize) return testSetByFeatures(cards);
+
+        long values = 0;
+        for (int card : cards)
+            values |= packedCards[card];
+        return testPackedSet(values);
+    }
+
+    @Override
+    public int testSets(int[] cards, boolean[] results) {
+        int r = config.featureSize;
+        int found = 0;
+        for (int i = 0, offset = 0; offset + r <= cards.length; ++i, offset += r) {
+            boolean legal;
+            if (packedCards == null) {
+                legal = testSetByFeatures(Arrays.copyOfRange(cards, offset, offset + r));
+            } else {
+                long values = 0;
+                for (int j = offset; j < offset + r; ++j)
+                    values |= packedCards[cards[j]];
+                legal = testPackedSet(values);
+            }
+            results[i] = legal;
+            if (legal) ++found;
+        }
+        return found;
+    }
+
+    /**
+     * Checks the OR of featureSize packed cards: each feature is sameSame iff its field has a single bit set, and
+     * butDifferent iff all the field's bits are set.
+     */
+    private boolean testPackedSet(long values) {
+        long extra = values & (values - lowBits); // per field: the bits above the lowest one (0 iff sameSame)
+        long missing = ~values & allBits;         // per field: the values no card has (0 iff butDifferent)
+        return (nonZeroFields(extra) & nonZeroFields(missing)) == 0;
+    }
+
+    /**
+     * @return - the highest bit of every field of the packed value that has any bit set.
+     */
+    private long nonZeroFields(long fields) {
+        long low = fields & ~highBits;
+        return ((low + (allBits & ~highBits)) | fields) & highBits;
+    }
+
+    private boolean testSetByFeatures(int[] cards) {
         int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
         for (int i = 0; i < config.featureCount; ++i) {
             boolean sameSame = true, butDifferent = true;
@@ -65,31 +163,346 @@ public class UtilImpl implements Util {
     }
 
     @Override
-    public List<int[]> findSets(List<Integer> deck, int count) {
-        LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
+    public long forEachSetWith(int card, int[] others, int count, IntPredicate present, Consumer<int[]> visitor) {
         int r = config.featureSize;
-        int[] combination = new int[r];
+        if (r < 2) return 0; // a set of one card forms no set with other cards
+        int[] set = new int[r];
+        set[0] = card;
+        if (r == 2) { // with two values per feature every pair of cards is a legal set
+            long found = 0;
+            for (int i = 0; i < count; ++i) {
+                if (others[i] == card || !present.test(others[i])) continue;
+                ++found;
+                if (visitor != null) {
+                    set[1] = others[i];
+                    visitor.accept(set);
+                }
+            }
+            return found;
+        }
 
-        for (int i = 0; i < r; ++i)
+        // complete the card with every r-2 other cards; the completing card must be greater than the chosen ones
+        int m = r - 2;
+        if (count < m + 1) return 0;
+        long found = 0;
+        int[] combination = new int[m];
+        int[] chosen = new int[r - 1];
+        int[] features = packedCards == null ? new int[r - 1] : null;
+        chosen[0] = card;
+        for (int i = 0; i < m; ++i)
             combination[i] = i;
 
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
+        while (combination[0] <= count - m - 1) {
+            for (int i = 0; i < m; ++i)
+                chosen[i + 1] = others[combination[i]];
+            int last = completeSet(chosen, features);
+            if (last > others[combination[m - 1]] && last != card && present.test(last)) {
+                ++found;
+                if (visitor != null) {
+                    System.arraycopy(chosen, 0, set, 0, r - 1);
+                    set[r - 1] = last;
+                    visitor.accept(set);
+                }
             }
 
-            // generate next combination in lexicographic order
-            int t = r - 1;
-            while (t != 0 && combination[t] == n - r + t) --t;
+            int t = m - 1;
+            while (t != 0 && combination[t] == count - m - 1 + t) --t;
             combination[t]++;
-            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+            for (int i = t + 1; i < m; i++) combination[i] = combination[i - 1] + 1;
         }
+        return found;
+    }
+
+    @Override
+    public List<int[]> findSets(List<Integer> deck, int count) {
+        LinkedList<int[]> sets = new LinkedList<>();
+        if (count <= 0) return sets;
+        int[] cards = sortedDistinctCards(deck);
+        if (cards.length >= PARALLEL_SEARCH_CARDS && config.featureSize >= 3) return findSetsParallel(cards, count);
+        SetCursor cursor = new SetCursor(cards, presenceBitmap(cards), 0, cards.length, null);
+        while (sets.size() < count && cursor.advance())
+            sets.add(cursor.set.clone());
         return sets;
     }
 
+    @Override
+    public Stream<int[]> streamSets(List<Integer> deck) {
+        int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<int[]>(Long.MAX_VALUE, characteristics) {
+
+            private SetCursor cursor; // created lazily, when the stream is consumed
+
+            @Override
+            public boolean tryAdvance(Consumer<? super int[]> action) {
+                if (cursor == null) {
+                    int[] cards = sortedDistinctCards(deck);
+                    cursor = new SetCursor(cards, presenceBitmap(cards), 0, cards.length, null);
+                }
+                if (!cursor.advance()) return false;
+                action.accept(cursor.set.clone());
+                return true;
+            }
+        }, false);
+    }
+
+    /**
+     * Same as the serial search of findSets, but split by the smallest card of each set across the common fork/join
+     * pool (see ParallelSearch). Returns the same sets, in the same order.
+     *
+     * @param cards - the sorted, distinct cards to search (at least featureSize of them).
+     * @param count - the maximum number of sets to find.
+     */
+    private List<int[]> findSetsParallel(int[] cards, int count) {
+        ParallelSearch search = new ParallelSearch(cards, presenceBitmap(cards), cards.length - config.featureSize + 1, count);
+        ForkJoinPool.commonPool().invoke(search.new Task(0, search.leads));
+        return search.merge();
+    }
+
+    /**
+     * Card presence bitmap - the completing card of every r-1 cards is looked up here.
+     */
+    private long[] presenceBitmap(int[] cards) {
+        long[] present = new long[(config.deckSize + 63) >> 6];
+        for (int card : cards)
+            present[card >> 6] |= 1L << card;
+        return present;
+    }
+
+    /**
+     * Enumerates, on demand and in lexicographic order, the legal sets among sorted, distinct cards: walks the
+     * combinations of the first r-1 cards of each set and looks their completing card up in the presence bitmap.
+     * All the buffers are allocated once, when the cursor is created.
+     */
+    private class SetCursor {
+
+        /**
+         * The current set (overwritten by each call to advance).
+         */
+        private final int[] set;
+
+        private final int[] cards;
+        private final long[] present;
+        private final int to;
+        private final AtomicInteger cutoff;
+        private final boolean pairs;
+        private final int[] combination;
+        private final int[] chosen;
+        private final int[] features;
+        private boolean started;
+
+        /**
+         * @param cards   - the sorted, distinct cards to search.
+         * @param present - the presence bitmap of cards.
+         * @param from    - the index (into cards) of the smallest card of the first sets to enumerate.
+         * @param to      - the sets whose smallest card is at index to or later are not enumerated.
+         * @param cutoff  - if not null, the enumeration stops as soon as the smallest card's index passes it.
+         */
+        private SetCursor(int[] cards, long[] present, int from, int to, AtomicInteger cutoff) {
+            int r = config.featureSize;
+            this.cards = cards;
+            this.present = present;
+            this.to = to;
+            this.cutoff = cutoff;
+            this.set = new int[r];
+            this.pairs = r < 3; // with two values per feature every pair of cards is a legal set
+            this.combination = new int[pairs ? r : r - 1];
+            this.chosen = new int[r - 1];
+            this.features = packedCards == null ? new int[r - 1] : null;
+            for (int i = 0; i < combination.length; ++i)
+                combination[i] = from + i;
+        }
+
+        /**
+         * Moves to the next legal set.
+         *
+         * @return - true iff there was another legal set (it is now in the set buffer).
+         */
+        private boolean advance() {
+            while (nextCombination()) {
+                if (pairs) {
+                    for (int i = 0; i < set.length; ++i)
+                        set[i] = cards[combination[i]];
+                    return true;
+                }
+                for (int i = 0; i < chosen.length; ++i)
+                    chosen[i] = cards[combination[i]];
+                int last = completeSet(chosen, features);
+                if (last > chosen[chosen.length - 1] && (present[last >> 6] & (1L << last)) != 0) {
+                    System.arraycopy(chosen, 0, set, 0, chosen.length);
+                    set[chosen.length] = last;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Generates the next combination in lexicographic order (leaving room for the completing card).
+         */
+        private boolean nextCombination() {
+            int m = combination.length;
+            int limit = cards.length - (pairs ? 0 : 1) - m; // the largest index of the first position
+            if (!started) {
+                started = true;
+            } else {
+                int t = m - 1;
+                while (t != 0 && combination[t] == limit + t) --t;
+                combination[t]++;
+                for (int i = t + 1; i < m; i++) combination[i] = combination[i - 1] + 1;
+            }
+            return combination[0] <= limit && combination[0] < to && (cutoff == null || combination[0] <= cutoff.get());
+        }
+    }
+
+    /**
+     * A parallel set search: the sets are split by their smallest card, and the per-card results are merged in the
+     * same order as the serial search. Once the sets found for a prefix of leading cards reach count, the searches of
+     * the following leading cards stop.
+     */
+    private class ParallelSearch {
+
+        private final int[] cards;
+        private final long[] present;
+        private final int leads;
+        private final int count;
+        private final List<List<int[]>> found;
+        private final boolean[] done;
+        private final AtomicInteger cutoff = new AtomicInteger(Integer.MAX_VALUE);
+        private int prefix;
+        private int prefixSets;
+
+        private ParallelSearch(int[] cards, long[] present, int leads, int count) {
+            this.cards = cards;
+            this.present = present;
+            this.leads = leads;
+            this.count = count;
+            this.found = new ArrayList<>(Collections.nCopies(leads, null));
+            this.done = new boolean[leads];
+        }
+
+        private synchronized void searched(int lead) {
+            done[lead] = true;
+            while (prefix < leads && done[prefix]) {
+                if (found.get(prefix) != null) prefixSets += found.get(prefix).size();
+                if (prefixSets >= count && cutoff.get() == Integer.MAX_VALUE) cutoff.set(prefix);
+                ++prefix;
+            }
+        }
+
+        private List<int[]> merge() {
+            LinkedList<int[]> sets = new LinkedList<>();
+            for (int lead = 0; lead < leads && sets.size() < count; ++lead)
+                if (found.get(lead) != null)
+                    for (int[] set : found.get(lead)) {
+                        sets.add(set);
+                        if (sets.size() >= count) break;
+                    }
+            return sets;
+        }
+
+        private class Task extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final int from;
+            private final int to;
+
+            private Task(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > 1) {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new Task(from, middle), new Task(middle, to));
+                } else {
+                    if (from <= cutoff.get()) {
+                        List<int[]> sets = new ArrayList<>();
+                        SetCursor cursor = new SetCursor(cards, present, from, from + 1, cutoff);
+                        while (sets.size() < count && cursor.advance())
+                            sets.add(cursor.set.clone());
+                        found.set(from, sets);
+                    }
+                    searched(from);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the sorted, distinct, non-null card ids of a collection of cards.
+     */
+    private int[] sortedDistinctCards(List<Integer> deck) {
+        boolean[] seen = new boolean[config.deckSize];
+        int n = 0;
+        for (Integer card : deck)
+            if (card != null && !seen[card]) {
+                seen[card] = true;
+                ++n;
+            }
+        int[] cards = new int[n];
+        for (int card = 0, i = 0; i < n; ++card)
+            if (seen[card]) cards[i++] = card;
+        return cards;
+    }
+
+    @Override
+    public int completeSet(int[] cards) {
+        if (cards.length != config.featureSize - 1 || cards.length < 2) return -1;
+        return completeSet(cards, packedCards == null ? new int[cards.length] : null);
+    }
+
+    /**
+     * Computes the only card that completes the given r-1 cards into a legal set.
+     *
+     * @param chosen   - the r-1 chosen card ids.
+     * @param features - a work buffer of length r-1 (unused if cards are packed).
+     * @return - the completing card id, or -1 if no card completes the chosen cards.
+     */
+    private int completeSet(int[] chosen, int[] features) {
+        if (packedCards != null) {
+            long values = 0;
+            for (int card : chosen)
+                values |= packedCards[card];
+
+            long fieldMask = (1L << config.featureSize) - 1;
+            int result = 0, weight = 1;
+            for (int f = 0; f < config.featureCount; ++f, values >>>= config.featureSize) {
+                long field = values & fieldMask;
+                int distinct = Long.bitCount(field);
+                int value;
+                if (distinct == 1) value = Long.numberOfTrailingZeros(field); // sameSame
+                else if (distinct == chosen.length) value = Long.numberOfTrailingZeros(fieldMask & ~field); // butDifferent
+                else return -1;
+                result += value * weight;
+                weight *= config.featureSize;
+            }
+            return result;
+        }
+
+        System.arraycopy(chosen, 0, features, 0, chosen.length);
+
+        int fullMask = (1 << config.featureSize) - 1;
+        int result = 0, weight = 1;
+        for (int f = 0; f < config.featureCount; ++f) {
+            int values = 0;
+            for (int i = 0; i < features.length; ++i) {
+                values |= 1 << (features[i] % config.featureSize);
+                features[i] /= config.featureSize;
+            }
+            int distinct = Integer.bitCount(values);
+            int value;
+            if (distinct == 1) value = Integer.numberOfTrailingZeros(values); // sameSame
+            else if (distinct == features.length) value = Integer.numberOfTrailingZeros(fullMask & ~values); // butDifferent
+            else return -1;
+            result += value * weight;
+            weight *= config.featureSize;
+        }
+        return result;
+    }
+
     public void spin() {
         if (config.randomSpinMax <= 0) return;
         long cycles = ThreadLocalRandom.current().nextLong(config.randomSpinMin, config.randomSpinMax);
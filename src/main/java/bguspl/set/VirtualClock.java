@@ -0,0 +1,153 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A simulated game clock for headless games (discrete-event simulation): its time only moves when all the game's
+ * threads are blocked and some of them wait on the clock, and then it skips right to the earliest deadline they wait
+ * for. A game with a point freeze of seconds then takes only as long as its threads actually compute.
+ * A driver thread watches the game's threads while any thread waits on the clock.
+ * Note: the time may skip ahead while a game thread waits on a thread the clock does not know (e.g. a parallel stream).
+ */
+public class VirtualClock implements GameClock {
+
+    /**
+     * The nanoseconds between two checks of the game's threads by the driver.
+     */
+    private static final long POLL_NANOS = 50_000;
+
+    /**
+     * The current (simulated) time, in milliseconds.
+     */
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * The game's threads (weakly referenced: threads that are done with the game are forgotten).
+     */
+    private final Set<Thread> threads = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * The threads that wait on the clock, with their deadlines.
+     */
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    /**
+     * The driver thread (null if no thread waits on the clock).
+     */
+    private Thread driver;
+
+    @Override
+    public long currentTimeMillis() {
+        return now.get();
+    }
+
+    @Override
+    public void sleep(long millies) throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        if (millies <= 0) {
+            Thread.yield();
+            return;
+        }
+        long deadline = now.get() + millies;
+        while (now.get() < deadline) {
+            parkUntil(this, deadline);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public void parkUntil(Object blocker, long deadline) {
+        Waiter waiter = new Waiter(Thread.currentThread(), deadline);
+        synchronized (this) {
+            if (now.get() >= deadline) return;
+            threads.add(waiter.thread);
+            waiters.add(waiter);
+            if (driver == null) {
+                driver = new Thread(this::drive, "virtual-clock");
+                driver.setDaemon(true);
+                driver.start();
+            }
+        }
+        try {
+            LockSupport.park(blocker);
+        } finally {
+            synchronized (this) {
+                waiters.remove(waiter);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void register(Thread thread) {
+        threads.add(thread);
+    }
+
+    /**
+     * The driver thread's loop: while any thread waits on the clock, whenever the game's threads are found blocked
+     * twice in a row (so a thread that was just unparked has a chance to show as running), moves the time to the
+     * earliest deadline and wakes up the threads that waited for it.
+     */
+    private void drive() {
+        boolean settled = false;
+        while (true) {
+            LockSupport.parkNanos(POLL_NANOS);
+            synchronized (this) {
+                if (waiters.isEmpty()) {
+                    driver = null;
+                    return;
+                }
+                if (!quiescent()) {
+                    settled = false;
+                    continue;
+                }
+                if (!settled) {
+                    settled = true;
+                    continue;
+                }
+                settled = false;
+                long next = Long.MAX_VALUE;
+                for (Waiter waiter : waiters)
+                    next = Math.min(next, waiter.deadline);
+                if (next == Long.MAX_VALUE) continue; // nothing to wait for: the game is stuck, not waiting for time
+                now.accumulateAndGet(next, Math::max);
+                for (Waiter waiter : waiters)
+                    if (waiter.deadline <= next) LockSupport.unpark(waiter.thread);
+            }
+        }
+    }
+
+    /**
+     * @return - true iff all the game's threads are blocked, and every thread whose deadline has passed is already
+     *           running again.
+     */
+    private boolean quiescent() {
+        long time = now.get();
+        for (Waiter waiter : waiters)
+            if (waiter.deadline <= time) return false;
+        for (Thread thread : threads) {
+            Thread.State state = thread.getState();
+            if (state == Thread.State.NEW || state == Thread.State.RUNNABLE) return false;
+        }
+        return true;
+    }
+
+    /**
+     * A thread that waits on the clock.
+     */
+    private static class Waiter {
+
+        private final Thread thread;
+        private final long deadline;
+
+        private Waiter(Thread thread, long deadline) {
+            this.thread = thread;
+            this.deadline = deadline;
+        }
+    }
+}
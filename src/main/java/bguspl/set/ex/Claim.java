@@ -0,0 +1,51 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A player's claim that its tokens mark a legal set, waiting to be checked by the dealer.
+ */
+class Claim {
+
+    /**
+     * The claiming player.
+     */
+    final Player player;
+
+    /**
+     * The time (as returned by System.nanoTime) of the key press that placed the player's last token.
+     */
+    final long time;
+
+    /**
+     * The table version at which the player found its cards to be a legal set.
+     */
+    final long version;
+
+    /**
+     * Completed by the dealer once the claim was checked.
+     */
+    final CompletableFuture<Verdict> verdict = new CompletableFuture<>();
+
+    /**
+     * The class constructor.
+     *
+     * @param player  - the claiming player.
+     * @param time    - the time of the key press that completed the claim.
+     * @param version - the table version at which the claim was found legal.
+     */
+    Claim(Player player, long time, long version) {
+        this.player = player;
+        this.time = time;
+        this.version = version;
+    }
+
+    /**
+     * The dealer's verdict on a claim.
+     */
+    enum Verdict {
+        POINT,   // the cards were a legal set, and were removed from the table
+        PENALTY, // the cards were not a legal set (a player only claims legal sets, so it penalizes itself)
+        NONE     // some of the tokens were returned (the cards were taken by another player, or reshuffled)
+    }
+}
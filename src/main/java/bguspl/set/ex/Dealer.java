@@ -1,27 +1,39 @@
 package bguspl.set.ex;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 import bguspl.set.Env;
 import bguspl.set.Util;
-import java.util.Collections;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import bguspl.set.UtilImpl;
 import java.util.Objects;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
 
 /**
  * This class manages the dealer's threads and data
  */
 public class Dealer implements Runnable {
 
+    /**
+     * The number of random candidate sets placeSetOnTable tries before it takes the first set that fits.
+     */
+    private static final int SET_SAMPLES = 64;
+
+    /**
+     * The number of pending claims from which they are verified in parallel.
+     */
+    private static final int PARALLEL_CLAIMS = 32;
+
     /**
      * The game environment object.
      */
@@ -35,34 +47,48 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The card ids that are left in the dealer's deck.
+     */
+    private final Deck deck;
+
+    /**
+     * The number of legal sets left among the cards in the deck and on the table.
      */
-    private final List<Integer> deck;
+    private final SetTracker remainingSets;
 
     /**
      * True iff game should be terminated.
      */
     private volatile boolean terminate;
 
-    private long lastChange;
+    /**
+     * True iff cards were dealt in the current table transaction (so the countdown should be reset once it is shown).
+     */
+    private boolean cardsDealt;
 
     /**
      * The time when the dealer needs to reshuffle the deck due to turn timeout.
      */
     private long reshuffleTime = Long.MAX_VALUE;
 
-    private final BlockingQueue<Player> playersToCheck;
+    /**
+     * The claims waiting to be checked (added by the player threads without blocking).
+     */
+    private final Queue<Claim> claims;
 
-    public Object dealerLock;
+    /**
+     * The dealer thread (unparked when a claim is submitted).
+     */
+    private volatile Thread dealerThread;
 
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        deck = new Deck(env.config.deckSize);
         this.util = new UtilImpl(env.config);
-        playersToCheck = new ArrayBlockingQueue<>(env.config.players); // can check one set at a time
-        this.dealerLock=new Object();
+        this.remainingSets = new SetTracker(env);
+        claims = new ConcurrentLinkedQueue<>();
     }
 
     /**
@@ -71,26 +97,26 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        dealerThread = Thread.currentThread();
         for(Player p: players){
-            Thread t = new Thread(p, "player-"+p.id);
+            Thread t = env.threads.newThread(p, "player-"+p.id);
             t.start();
         }
         table.removingCards.compareAndSet(false, true);
         while (!shouldFinish()) {
-            table.beforeWrite();
+            table.beginTransaction();
             placeCardsOnTable();
-            table.afterWrite();
+            commitTableChanges();
             timerLoop();
-            updateTimerDisplay(false);
-            table.beforeWrite();
+            table.beginTransaction();
             removeAllCardsFromTable();
-            table.afterWrite();
+            commitTableChanges();
         }
         if(!terminate) terminate();
         else{
         for(Player p: players){
             try{
-                p.getThread().join();
+                if(p.getThread() != null) p.getThread().join();
             }
             catch(InterruptedException e){};
             }
@@ -103,28 +129,30 @@ public class Dealer implements Runnable {
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void timerLoop() {
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
+        while (!terminate && env.clock.currentTimeMillis() < reshuffleTime) {
             sleepUntilWokenOrTimeout();
-            updateTimerDisplay(false);
+            if(claims.isEmpty()) continue; // the reshuffle deadline - the table is untouched
             table.removingCards.compareAndSet(false, true);
-            table.beforeWrite();
+            table.beginTransaction();
             removeCardsFromTable();
-            //table.afterWrite();
+            placeCardsOnTable();
+            commitTableChanges();
+            table.removingCards.compareAndSet(true, false);
+            // terminate only once the table is committed: the players may be waiting to read it
             if(env.config.turnTimeoutMillis<=0 && shouldFinish()){  // ----- for bonus -----//
                 terminate();
             }
-            //table.beforeWrite();
-            placeCardsOnTable();
-            table.afterWrite();
-            if(env.config.turnTimeoutMillis<=0){
-            while(0==env.util.findSets(Arrays.asList(table.slotToCard), 1).size()){ // ----- for bonus -----//
-                table.beforeWrite();
-                removeAllCardsFromTable();
-                placeCardsOnTable();
-                table.afterWrite();
-                }
-            }
-            table.removingCards.compareAndSet(true, false);
+        }
+    }
+
+    /**
+     * Commits the dealer's table transaction, then resets the countdown if any cards were dealt in it.
+     */
+    private void commitTableChanges() {
+        table.commit();
+        if (cardsDealt) {
+            cardsDealt = false;
+            updateTimerDisplay();
         }
     }
 
@@ -133,12 +161,13 @@ public class Dealer implements Runnable {
      */
     public void terminate() {
         this.terminate = true;
+        LockSupport.unpark(dealerThread);
         for(int i=players.length-1; i>=0; i--){
             synchronized(players[i]){
             players[i].terminate();
             }
             try{
-                players[i].getThread().join();
+                if(players[i].getThread() != null) players[i].getThread().join();
             }
             catch(InterruptedException e){};
         }
@@ -150,118 +179,268 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || !remainingSets.anySetLeft();
     }
 
-    public void checkMe(Player player){
-        if (player.getTokensLeft() == 0){
-            try{
-                playersToCheck.put(player);
-            }
-            catch(InterruptedException e){};
-        }
+    /**
+     * Submits a player's claim for checking. The player checks its cards itself, so only legal sets are claimed.
+     *
+     * @param player  - the claiming player.
+     * @param time    - the time (as returned by System.nanoTime) of the key press that placed the player's last token.
+     * @param version - the table version at which the player found its cards to be a legal set.
+     * @return - the dealer's verdict on the claim, once it is checked.
+     */
+    public CompletableFuture<Claim.Verdict> checkMe(Player player, long time, long version){
+        if (player.getTokensLeft() != 0)
+            return CompletableFuture.completedFuture(Claim.Verdict.NONE);
+        Claim claim = new Claim(player, time, version);
+        claims.add(claim);
+        LockSupport.unpark(dealerThread);
+        return claim.verdict;
     }
 
     /**
      * Checks cards should be removed from the table and removes them.
+     * All the pending claims are taken at once. A claim made at the current table version is known to be legal (the
+     * player checked it); older claims are verified again, together (in parallel if there are many of them). Claims
+     * are then resolved by the time of their key presses: a legal set wins unless one of its slots was already won by
+     * an earlier claim (in which case its tokens there are returned, as if the cards were removed before it was
+     * checked).
      */
-    private void removeCardsFromTable() {
-        while(playersToCheck.size()>0){
-            Player player = null;
-            try{
-                player = playersToCheck.take();
+    void removeCardsFromTable() {
+        List<Claim> pending = new ArrayList<>();
+        for (Claim claim; (claim = this.claims.poll()) != null; )
+            pending.add(claim);
+        pending.sort(Comparator.comparingLong(claim -> claim.time));
+        long version = table.version();
+        List<Player> claims = new ArrayList<>(pending.size());
+        for (Claim claim : pending)
+            claims.add(claim.player);
+        int r = env.config.featureSize;
+        int n = claims.size();
+        int[] slots = new int[n * r];
+        boolean[] complete = new boolean[n];
+        int[] claimSlots = new int[r];
+        for (int i = 0; i < n; ++i) {
+            if (claims.get(i).getTokensLeft() != 0) continue;
+            complete[i] = table.tokenSlots(claims.get(i).id, claimSlots) == r;
+            System.arraycopy(claimSlots, 0, slots, i * r, r);
+        }
+
+        boolean[] legal = new boolean[n];
+        for (int i = 0; i < n; ++i)
+            legal[i] = complete[i] && pending.get(i).version == version;
+        IntStream verify = IntStream.range(0, n).filter(i -> complete[i] && !legal[i]);
+        if (n >= PARALLEL_CLAIMS) verify = verify.parallel();
+        verify.forEach(i -> {
+            int[] cards = new int[r];
+            for (int j = 0; j < r; ++j)
+                cards[j] = table.slotToCard[slots[i * r + j]];
+            legal[i] = util.testSet(cards);
+        });
+
+        boolean[] won = new boolean[n];
+        boolean[] penalized = new boolean[n];
+        boolean[] taken = new boolean[table.slotToCard.length];
+        for (int i = 0; i < n; ++i) {
+            if (!complete[i]) continue;
+            boolean overlaps = false;
+            for (int j = i * r; j < i * r + r; ++j)
+                overlaps |= taken[slots[j]];
+            if (overlaps) continue;
+            if (legal[i]) {
+                won[i] = true;
+                for (int j = i * r; j < i * r + r; ++j)
+                    taken[slots[j]] = true;
+            } else {
+                penalized[i] = true;
             }
-            catch(InterruptedException e){};
-            synchronized(player){
-                if (player.getTokensLeft() == 0){
-                    int index = 0;
-                    int[] cardsToCheck = new int[env.config.featureSize]; // instead of 3
-                    for(int i=0; i<table.tokens.length && index<env.config.featureSize; i++){
-                        if(table.tokens[i][player.id]){
-                            cardsToCheck[index] = table.slotToCard[i];
-                            index++;
-                        }
-                    }
-                    if(util.testSet(cardsToCheck)){
-                        player.point();
-                        table.removingCards.compareAndSet(false, true);
-                        for(int c: cardsToCheck){
-                            for(int playerId=0; playerId<env.config.players; playerId++){
-                                if(table.removeToken(playerId, table.cardToSlot[c]))
-                                    players[playerId].returnToken();
-                                players[playerId].removeCardFromQueue(table.cardToSlot[c]);
-                            }
-                            table.removeCard(table.cardToSlot[c]);
-                        }
-                    }
-                    else{
-                        player.penalty();
-                    } 
-                }
-                player.gettingChecked=false;
-                player.notifyAll();
+        }
+
+        // the winning sets are removed together, in the dealer's table transaction
+        for (int i = 0; i < n; ++i) {
+            if (!won[i]) continue;
+            table.removingCards.compareAndSet(false, true);
+            for (int j = i * r; j < i * r + r; ++j) {
+                remainingSets.collect(table.slotToCard[slots[j]]);
+                removeTokens(slots[j]);
+                table.removeCard(slots[j]);
             }
         }
+
+        for (int i = 0; i < n; ++i)
+            pending.get(i).verdict.complete(won[i] ? Claim.Verdict.POINT
+                    : penalized[i] ? Claim.Verdict.PENALTY : Claim.Verdict.NONE);
+    }
+
+    /**
+     * Removes all the tokens from a slot and returns them to their players (only the players whose token bits are set
+     * on the slot are visited), dropping the presses they queued on the slot.
+     */
+    private void removeTokens(int slot) {
+        table.removeTokens(slot, playerId -> {
+            players[playerId].returnToken();
+            players[playerId].removeCardFromQueue(slot);
+        });
     }
 
     /**
      * Check if any cards can be removed from the deck and placed on the table.
      */
     private void placeCardsOnTable() {
-        Collections.shuffle(deck);
+        shrinkTable();
+        boolean mustHaveSet = env.config.turnTimeoutMillis<=0 && !terminate && remainingSets.anySetLeft(); // ----- for bonus -----//
+        if(mustHaveSet && env.config.overflowColumns==0 && !placeSetOnTable()){
+            removeAllCardsFromTable(); // no set can be completed in the empty slots - redeal
+            placeSetOnTable();
+        }
+        placeCardsInEmptySlots();
+        if(env.config.overflowColumns>0 && !extendTable() && mustHaveSet){
+            removeAllCardsFromTable(); // the overflow slots did not help either - redeal
+            placeSetOnTable();
+            placeCardsInEmptySlots();
+        }
+        table.removingCards.compareAndSet(true, false); 
+    }
+
+    /**
+     * Deals random cards from the deck to the empty slots of the grid.
+     */
+    private void placeCardsInEmptySlots() {
         for(int i=0; i<env.config.tableSize; i++){
             if (!deck.isEmpty() && table.getCard(i)==-1) {
-                Integer newCard = deck.remove(0);
+                int newCard = deck.draw();
                 table.placeCard(newCard, i);
-                updateTimerDisplay(true);
+                cardsDealt = true;
             }
         }
-        table.removingCards.compareAndSet(true, false); 
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Deals cards to the overflow slots, one at a time, until there is a legal set on the table.
+     *
+     * @return - true iff there is a legal set on the table.
      */
-    private void sleepUntilWokenOrTimeout() {
-        synchronized(dealerLock){
-            if(env.config.turnTimeoutWarningMillis>=reshuffleTime-System.currentTimeMillis()){
-            try {
-                dealerLock.wait(1);
-            } catch (InterruptedException e) {};
+    private boolean extendTable() {
+        int slot;
+        while(!table.anySet() && !deck.isEmpty() && (slot = table.emptyOverflowSlot()) != -1){
+            table.placeCard(deck.draw(), slot);
+            cardsDealt = true;
         }
-        else{
-            try {
-                dealerLock.wait(900);
-            } 
-            catch(InterruptedException e){};
+        return table.anySet();
+    }
+
+    /**
+     * Moves the cards of the overflow slots (if any) back to the empty slots of the grid, with the tokens on them.
+     */
+    private void shrinkTable() {
+        int overflow = table.slotToCard.length - 1;
+        for(int slot=0; slot<env.config.tableSize; slot++){
+            if(table.getCard(slot) != -1) continue;
+            while(overflow >= env.config.tableSize && table.getCard(overflow) == -1) --overflow;
+            if(overflow < env.config.tableSize) return;
+            for(Player player: players)
+                player.removeCardFromQueue(overflow);
+            table.moveCard(overflow, slot);
         }
     }
-}
 
     /**
-     * Reset and/or update the countdown and the countdown display.
+     * Makes sure the table will hold a legal set once its empty slots are filled: if there is no set on the table,
+     * deals the missing cards of a set that can be completed from the deck (a random one if a few random tries find
+     * one, otherwise the first one the lazy set enumeration finds).
+     *
+     * @return - false iff there is no set on the table and none can be completed in the empty slots.
      */
-    private void updateTimerDisplay(boolean reset) {
+    private boolean placeSetOnTable() {
+        if (table.anySet()) return true;
+        int emptySlots = 0;
+        for (int slot = 0; slot < env.config.tableSize; ++slot)
+            if (table.getCard(slot) == -1) ++emptySlots;
+        if (emptySlots == 0 || deck.isEmpty()) return false;
+
+        List<Integer> cards = new ArrayList<>(deck.size() + table.slotToCard.length);
+        deck.addTo(cards);
+        for (int card : table.slotToCard)
+            if (card != -1) cards.add(card);
+        int free = emptySlots;
+        int[] chosen = sampleSet(cards, emptySlots);
+        if (chosen == null)
+            chosen = env.util.streamSets(cards).filter(set -> cardsFromDeck(set) <= free).findFirst().orElse(null);
+        if (chosen == null) return false;
+
+        int slot = 0;
+        for (int card : chosen)
+            if (table.cardToSlot[card] == -1) {
+                while (table.getCard(slot) != -1) ++slot;
+                deck.remove(card);
+                table.placeCard(card, slot);
+                cardsDealt = true;
+            }
+        return true;
+    }
+
+    /**
+     * Tries to pick a random set among the cards in play: completes random featureSize - 1 cards with the only card
+     * that forms a set with them.
+     *
+     * @param cards      - the cards in play (the deck and the table).
+     * @param emptySlots - the number of empty grid slots.
+     * @return - a set that needs at most emptySlots cards from the deck (null if SET_SAMPLES tries found none).
+     */
+    private int[] sampleSet(List<Integer> cards, int emptySlots) {
+        int r = env.config.featureSize;
+        if (r < 3 || cards.size() < r) return null;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] chosen = new int[r - 1];
+        for (int attempt = 0; attempt < SET_SAMPLES; ++attempt) {
+            for (int i = 0; i < chosen.length; ++i)
+                chosen[i] = cards.get(random.nextInt(cards.size()));
+            if (Arrays.stream(chosen).distinct().count() < chosen.length) continue;
+            int last = env.util.completeSet(chosen);
+            if (last == -1 || (table.cardToSlot[last] == -1 && !deck.contains(last))) continue;
+            int[] set = Arrays.copyOf(chosen, r);
+            set[r - 1] = last;
+            if (cardsFromDeck(set) <= emptySlots) return set;
+        }
+        return null;
+    }
+
+    /**
+     * @return - the number of cards of a set that are not on the table.
+     */
+    private int cardsFromDeck(int[] set) {
+        int fromDeck = 0;
+        for (int card : set)
+            if (table.cardToSlot[card] == -1) ++fromDeck;
+        return fromDeck;
+    }
+
+    /**
+     * Sleep until there is a claim to check, or until the reshuffle deadline (Long.MAX_VALUE if there is no countdown).
+     * The user interface animates the countdown (or elapsed time) by itself, so there is no display tick to wake up for.
+     */
+    private void sleepUntilWokenOrTimeout() {
+        while(!terminate && claims.isEmpty() && env.clock.currentTimeMillis() < reshuffleTime){
+            env.clock.parkUntil(this, reshuffleTime);
+            if (Thread.interrupted()) return;
+        }
+    }
+
+    /**
+     * Reset the countdown (or the elapsed time) and publish it to the user interface.
+     */
+    private void updateTimerDisplay() {
         if(env.config.turnTimeoutMillis<0)
         {
             return;
         }
-        else if(env.config.turnTimeoutMillis==0 && reset){
-            lastChange = System.currentTimeMillis();
-            env.ui.setCountdown(0, false);
-        }
-        else if(env.config.turnTimeoutMillis==0 && !reset){
-            env.ui.setCountdown(System.currentTimeMillis()-lastChange, false);
-        }
-        else if(reset){
-            reshuffleTime = System.currentTimeMillis()+env.config.turnTimeoutMillis;
-            env.ui.setCountdown(Math.max((long)0, (long)reshuffleTime-System.currentTimeMillis()), false);
-        }
-        else if(env.config.turnTimeoutWarningMillis>=reshuffleTime-System.currentTimeMillis()){
-            env.ui.setCountdown(Math.max((long)0, (long)reshuffleTime-System.currentTimeMillis()), true);
+        else if(env.config.turnTimeoutMillis==0){
+            env.ui.setElapsedSince(env.clock.currentTimeMillis());
         }
         else{
-            env.ui.setCountdown(Math.max((long)0, (long)reshuffleTime-System.currentTimeMillis()), false);
+            reshuffleTime = env.clock.currentTimeMillis()+env.config.turnTimeoutMillis;
+            env.ui.setCountdownDeadline(reshuffleTime, env.config.turnTimeoutWarningMillis);
         }
     }
 
@@ -270,15 +449,11 @@ public class Dealer implements Runnable {
      */
     private void removeAllCardsFromTable() {
         table.removingCards.compareAndSet(false, true);
-        for(int slot=0; slot<env.config.tableSize; slot++){
-            for(int player=0; player<env.config.players; player++){
-                if(table.removeToken(player, slot)){
-                    players[player].returnToken();
-                }
-            }
+        for(int slot=0; slot<table.slotToCard.length; slot++){
+            table.removeTokens(slot, player -> players[player].returnToken());
         }
-        for(int slot=0; slot<env.config.tableSize; slot++){
-            if(table.slotToCard[slot]!=null)
+        for(int slot=0; slot<table.slotToCard.length; slot++){
+            if(table.slotToCard[slot]!=-1)
                 deck.add(table.slotToCard[slot]);
         }
         table.clearCards();
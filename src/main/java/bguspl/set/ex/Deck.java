@@ -0,0 +1,104 @@
+package bguspl.set.ex;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The dealer's deck: an unordered collection of card ids, drawn at random.
+ * Drawing, adding and removing a card take O(1) time (a partial Fisher-Yates shuffle - each draw swaps a random card
+ * to the end of the deck and takes it from there).
+ *
+ * @inv 0 <= size <= cards.length
+ * @inv cards[position[card]] == card iff card is in the deck
+ */
+public class Deck {
+
+    /**
+     * The cards in the deck are cards[0..size).
+     */
+    private final int[] cards;
+
+    /**
+     * The index of each card in cards (-1 if the card is not in the deck).
+     */
+    private final int[] position;
+
+    /**
+     * The number of cards in the deck.
+     */
+    private int size;
+
+    /**
+     * Constructor - the deck holds all the cards.
+     *
+     * @param deckSize - the total number of cards.
+     */
+    public Deck(int deckSize) {
+        cards = new int[deckSize];
+        position = new int[deckSize];
+        for (int card = 0; card < deckSize; ++card) {
+            cards[card] = card;
+            position[card] = card;
+        }
+        size = deckSize;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int card) {
+        return position[card] != -1;
+    }
+
+    /**
+     * Draws a random card from the deck.
+     *
+     * @return - the card drawn.
+     * @pre - the deck is not empty.
+     */
+    public int draw() {
+        int card = cards[ThreadLocalRandom.current().nextInt(size)];
+        remove(card);
+        return card;
+    }
+
+    /**
+     * Removes a specific card from the deck.
+     *
+     * @param card - the card id.
+     * @pre - the card is in the deck.
+     */
+    public void remove(int card) {
+        int index = position[card];
+        int last = cards[--size];
+        cards[index] = last;
+        position[last] = index;
+        position[card] = -1;
+    }
+
+    /**
+     * Returns a card to the deck.
+     *
+     * @param card - the card id.
+     * @pre - the card is not in the deck.
+     */
+    public void add(int card) {
+        cards[size] = card;
+        position[card] = size++;
+    }
+
+    /**
+     * Adds the cards in the deck to a list.
+     *
+     * @param list - the list to add the cards to.
+     */
+    public void addTo(List<Integer> list) {
+        for (int i = 0; i < size; ++i)
+            list.add(cards[i]);
+    }
+}
@@ -0,0 +1,88 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A table lock implemented as a monitor: a ReentrantLock and its conditions (rather than the lock object's own monitor,
+ * which pins a waiting virtual thread to its carrier).
+ */
+public class MonitorTableLock implements TableLock {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled when the dealer is done writing (players wait for it).
+     */
+    private final Condition dealerDone = lock.newCondition();
+
+    /**
+     * Signalled when the last reader leaves (the dealer waits for it).
+     */
+    private final Condition readersDone = lock.newCondition();
+
+    private int activePlayers;
+    private int activeDealer;
+    private int waitingDealer;
+
+    @Override
+    public void beforeRead() {
+        lock.lock();
+        try {
+            while (!(waitingDealer == 0 && activeDealer == 0))
+                dealerDone.awaitUninterruptibly();
+            activePlayers++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void afterRead() {
+        lock.lock();
+        try {
+            activePlayers--;
+            if (activePlayers == 0) readersDone.signal(); // only the dealer waits for the readers to leave
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void beforeWrite() {
+        lock.lock();
+        try {
+            waitingDealer = 1;
+            while (!(activePlayers == 0 && activeDealer == 0))
+                readersDone.awaitUninterruptibly();
+            waitingDealer = 0;
+            activeDealer = 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void afterWrite() {
+        lock.lock();
+        try {
+            activeDealer = 0;
+            dealerDone.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Optimistic reads are not supported: the stamp is always 0, so the reader falls back to beforeRead.
+     */
+    @Override
+    public long tryOptimisticRead() {
+        return 0;
+    }
+
+    @Override
+    public boolean validate(long stamp) {
+        return false;
+    }
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
 import bguspl.set.Env;
 
 /**
@@ -62,15 +63,17 @@ public class Player implements Runnable {
     /**
      * The upcoming actions for the player.
      */
-    private final ArrayBlockingQueue<Integer> actions;
+    private final ArrayBlockingQueue<KeyPress> actions;
 
     private final Dealer dealer;
 
     private volatile boolean penalty;
 
-    protected volatile boolean gettingChecked;
+    /**
+     * The time (as returned by env.clock) the player's penalty freeze ends at (its key presses are ignored until then).
+     */
+    private volatile long frozenUntil;
 
-    private volatile boolean point;
 
     /**
      * The class constructor.
@@ -91,8 +94,6 @@ public class Player implements Runnable {
         this.actions = new ArrayBlockingQueue<>(env.config.featureSize);
         this.terminate = false;
         this.penalty=false;
-        this.gettingChecked=false;
-        this.point = false;
     }
 
     /**
@@ -104,44 +105,45 @@ public class Player implements Runnable {
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
         if (!human) createArtificialIntelligence();
         while (!terminate) {
-            int slot;
+            KeyPress press;
             try {
-                slot = this.actions.take();
+                press = this.actions.take();
             } catch (InterruptedException e) {
                 break;
             };
+            int slot = press.slot;
+            // optimistic check first: most key presses (e.g. on an empty slot, or with no tokens left) change nothing
+            long stamp = table.tryOptimisticRead();
+            boolean hasToken = table.hasToken(id, slot);
+            boolean noCard = table.slotToCard[slot] == -1;
+            if (table.validate(stamp) && !hasToken && (tokensLeft == 0 || noCard)) continue;
+
             table.beforeRead();
-            if (!(table.tokens[slot][id]) && tokensLeft > 0 && table.slotToCard[slot] != null){// && !table.removingCards.get()) {
+            if (!(table.hasToken(id, slot)) && tokensLeft > 0 && table.slotToCard[slot] != -1){// && !table.removingCards.get()) {
                 table.placeToken(id, slot);
-                table.afterRead();
                 tokensLeft--;
+                // check the cards while they cannot change, so that only legal sets are claimed from the dealer
+                long version = table.version();
+                boolean legal = tokensLeft == 0 && holdsSet();
+                table.afterRead();
                 if (tokensLeft == 0) {
-                    gettingChecked=true; //empty actionset?
-                    synchronized(this){ 
-                        synchronized(dealer.dealerLock){ 
-                            dealer.checkMe(this);
-                            dealer.dealerLock.notifyAll();
-                        }
-                        while(gettingChecked && !terminate){
-                            try{
-                                this.wait();
-                            } catch(InterruptedException e){
-                                gettingChecked = false;
-                                break;
-                            };
-                        }
-                        if(terminate) break;
+                    Claim.Verdict verdict = Claim.Verdict.PENALTY;
+                    if (legal) try{
+                        verdict = dealer.checkMe(this, press.time, version).get();
+                    } catch(InterruptedException | ExecutionException e){
+                        break;
                     }
-                    if(point){
+                    if(verdict == Claim.Verdict.POINT){
+                        point();
                         playerInPoint();
-                        point = false;
                     }
-                    else if(penalty){
+                    else if(verdict == Claim.Verdict.PENALTY){
+                        penalty();
                         playerInPenalty();
                     }
                     actions.clear();
                 } 
-            } else if(table.tokens[slot][id]){
+            } else if(table.hasToken(id, slot)){
                 table.removeToken(id, slot);
                 tokensLeft++;
                 table.afterRead();
@@ -162,14 +164,24 @@ public class Player implements Runnable {
      */
     private void createArtificialIntelligence() {
         // note: this is a very, very smart AI (!)
-        aiThread = new Thread(() -> {
+        aiThread = env.threads.newThread(() -> {
             env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
             Random random = new Random();
             while (!terminate) {
-                int randomNumber = random.nextInt(env.config.tableSize);
+                // key presses are ignored during a penalty freeze: wait it out instead of spinning
+                long frozen = frozenUntil - env.clock.currentTimeMillis();
+                if (penalty && frozen > 0) {
+                    try {
+                        env.clock.sleep(frozen);
+                    } catch (InterruptedException ignored) {};
+                    continue;
+                }
+                int randomNumber = random.nextInt(env.config.maxTableSize);
                 keyPressed(randomNumber);
                 try {
-                    Thread.sleep(0);
+                    // virtual threads are not time sliced, so on them sleep at least 1ms to let the other threads (and
+                    // timers) run
+                    Thread.sleep(env.threads.virtual() ? 1 : 0);
                 } catch (InterruptedException ignored) {};
             }
             env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
@@ -177,24 +189,48 @@ public class Player implements Runnable {
         aiThread.start();
     }
 
+    /**
+     * Checks whether the player's tokens mark a legal set (called with the table read lock held).
+     *
+     * @return - true iff the player has a token on each card of a legal set.
+     */
+    private boolean holdsSet() {
+        int[] cards = new int[env.config.featureSize];
+        if (table.tokenSlots(id, cards) != cards.length) return false;
+        for (int i = 0; i < cards.length; ++i)
+            cards[i] = table.slotToCard[cards[i]];
+        return env.util.testSet(cards);
+    }
+
     /**
      * Called when the game should be terminated.
      */
     public void terminate() {
         this.terminate = true;
-        if(!human){
+        // the threads are null if the player was terminated before it started (e.g. by the game host)
+        if(!human && aiThread != null){
             aiThread.interrupt();
         }
-        this.playerThread.interrupt();
+        if(playerThread != null) this.playerThread.interrupt();
     }
 
     /**
      * This method is called when a key is pressed.
      */
     public void keyPressed(int slot) {
-        if(!table.removingCards.get() && !penalty && table.slotToCard[slot] != null) {
+        keyPressed(slot, System.nanoTime());
+    }
+
+    /**
+     * This method is called when a key is pressed.
+     *
+     * @param slot - the slot of the key.
+     * @param time - the time (as returned by System.nanoTime) the key was pressed.
+     */
+    public void keyPressed(int slot, long time) {
+        if(!table.removingCards.get() && !penalty && table.slotToCard[slot] != -1) {
                 try {
-                    this.actions.put(slot);
+                    this.actions.put(new KeyPress(slot, time));
                 } catch (InterruptedException e) {};
             }
         } 
@@ -206,22 +242,18 @@ public class Player implements Runnable {
      * @post - the player's score is updated in the ui.
      */
     public void point(){
-        this.point = true;
+        score++;
+        env.ui.setScore(id, score);
+        int ignored = table.countCards(); // this part is just for demonstration in the unit tests
     }
 
     public void playerInPoint() {
-        score++;
-        env.ui.setScore(id, score);
-        long waitTime = System.currentTimeMillis()+env.config.pointFreezeMillis;
-        env.ui.setFreeze(id, waitTime-System.currentTimeMillis());
+        long waitTime = env.clock.currentTimeMillis()+env.config.pointFreezeMillis;
+        env.ui.setFreeze(id, waitTime-env.clock.currentTimeMillis());
         try {
-            Thread.sleep(env.config.pointFreezeMillis); // Sleep for 1 second
+            env.clock.sleep(env.config.pointFreezeMillis); // Sleep for 1 second
         } catch (InterruptedException e){};
-        env.ui.setFreeze(id, waitTime-System.currentTimeMillis());
-
-        // TODO implement
-        // maybe need to add more related actions + maybe need to remove the sleep if happens somewhere else
-        int ignored = table.countCards(); // this part is just for demonstration in the unit tests
+        env.ui.setFreeze(id, waitTime-env.clock.currentTimeMillis());
     }
 
     /**
@@ -237,15 +269,16 @@ public class Player implements Runnable {
     }
 
     public void playerInPenalty(){
-        long waitTime = System.currentTimeMillis()+env.config.penaltyFreezeMillis;
-        env.ui.setFreeze(id, waitTime-System.currentTimeMillis());
-        while(System.currentTimeMillis() < waitTime && !terminate){
+        long waitTime = env.clock.currentTimeMillis()+env.config.penaltyFreezeMillis;
+        frozenUntil = waitTime;
+        env.ui.setFreeze(id, waitTime-env.clock.currentTimeMillis());
+        while(env.clock.currentTimeMillis() < waitTime && !terminate){
             try{
-                Thread.sleep(990);
+                env.clock.sleep(Math.min(990, waitTime-env.clock.currentTimeMillis()));
             } catch (InterruptedException e){};
-            env.ui.setFreeze(id, waitTime-System.currentTimeMillis());
+            env.ui.setFreeze(id, waitTime-env.clock.currentTimeMillis());
         }
-        env.ui.setFreeze(id, waitTime-System.currentTimeMillis());
+        env.ui.setFreeze(id, waitTime-env.clock.currentTimeMillis());
         this.penalty=false;
     }
 
@@ -268,8 +301,7 @@ public class Player implements Runnable {
     }
 
     public void removeCardFromQueue(int slot){
-        if(actions.contains(slot))
-            actions.remove(slot);
+        actions.removeIf(press -> press.slot == slot);
     }
 
     public Thread getAiThread(){
@@ -279,5 +311,19 @@ public class Player implements Runnable {
     public boolean isHuman(){
         return human;
     }
+
+    /**
+     * A key press waiting to be handled by the player thread.
+     */
+    private static class KeyPress {
+
+        private final int slot;
+        private final long time;
+
+        private KeyPress(int slot, long time) {
+            this.slot = slot;
+            this.time = time;
+        }
+    }
 }
 
@@ -0,0 +1,103 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Arrays;
+
+/**
+ * This class keeps track of how many legal sets can still be collected from the cards that are in play (i.e. in the
+ * deck or on the table).
+ *
+ * @inv remaining >= 0
+ */
+public class SetTracker {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * inPlay[card] is true iff the card was not collected yet.
+     */
+    private final boolean[] inPlay;
+
+    /**
+     * The ids of the cards in play, in increasing order (the first playing entries).
+     */
+    private final int[] cardsInPlay;
+    private int playing;
+
+    /**
+     * The other cards in play of the card being counted (reused by every count).
+     */
+    private final int[] others;
+
+    /**
+     * The number of legal sets among the cards in play.
+     */
+    private long remaining;
+
+    /**
+     * Constructor - all the cards of the deck are in play.
+     *
+     * @param env - the game environment objects.
+     */
+    public SetTracker(Env env) {
+        this.env = env;
+        this.inPlay = new boolean[env.config.deckSize];
+        Arrays.fill(inPlay, true);
+        this.cardsInPlay = new int[inPlay.length];
+        for (int card = 0; card < inPlay.length; ++card)
+            cardsInPlay[card] = card;
+        this.playing = inPlay.length;
+        this.others = new int[inPlay.length];
+
+        // every set is counted once for each of its cards
+        long total = 0;
+        for (int card = 0; card < inPlay.length; ++card)
+            total += countSetsWith(card);
+        remaining = total / env.config.featureSize;
+    }
+
+    /**
+     * @return - the number of legal sets that can still be collected.
+     */
+    public long remaining() {
+        return remaining;
+    }
+
+    /**
+     * @return - true iff there is a legal set among the cards in play.
+     */
+    public boolean anySetLeft() {
+        return remaining > 0;
+    }
+
+    /**
+     * Takes a card out of play (i.e. it was collected as part of a set).
+     *
+     * @param card - the collected card.
+     * @post - the sets that include the card are no longer counted.
+     */
+    public void collect(int card) {
+        if (!inPlay[card]) return;
+        remaining -= countSetsWith(card);
+        inPlay[card] = false;
+        int index = Arrays.binarySearch(cardsInPlay, 0, playing, card);
+        System.arraycopy(cardsInPlay, index + 1, cardsInPlay, index, --playing - index);
+    }
+
+    /**
+     * Counts the legal sets that a card in play forms with the other cards in play.
+     *
+     * @param card - the card id.
+     * @return - the number of such sets.
+     */
+    private long countSetsWith(int card) {
+        int index = Arrays.binarySearch(cardsInPlay, 0, playing, card);
+        System.arraycopy(cardsInPlay, 0, others, 0, index);
+        System.arraycopy(cardsInPlay, index + 1, others, index, playing - index - 1);
+        return env.util.forEachSetWith(card, others, playing - 1, other -> inPlay[other], null);
+    }
+}
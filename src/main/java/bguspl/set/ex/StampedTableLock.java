@@ -0,0 +1,79 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A table lock implemented with a StampedLock: optimistic reads cost no locking at all, and readers back off while
+ * the dealer is waiting to write.
+ */
+public class StampedTableLock implements TableLock {
+
+    private final StampedLock lock = new StampedLock();
+    private final Lock readLock = lock.asReadLock();
+
+    /**
+     * True iff the dealer is waiting for the write lock (new readers back off).
+     */
+    private volatile boolean waitingDealer;
+
+    /**
+     * Guards the readers' wait for the waiting dealer to get the write lock.
+     */
+    private final ReentrantLock gate = new ReentrantLock();
+    private final Condition dealerWriting = gate.newCondition();
+
+    /**
+     * The dealer's write stamp (accessed by the dealer thread only).
+     */
+    private long writeStamp;
+
+    @Override
+    public void beforeRead() {
+        if (waitingDealer) {
+            gate.lock();
+            try {
+                while (waitingDealer)
+                    dealerWriting.awaitUninterruptibly();
+            } finally {
+                gate.unlock();
+            }
+        }
+        readLock.lock();
+    }
+
+    @Override
+    public void afterRead() {
+        readLock.unlock();
+    }
+
+    @Override
+    public void beforeWrite() {
+        waitingDealer = true;
+        writeStamp = lock.writeLock();
+        gate.lock();
+        try {
+            waitingDealer = false;
+            dealerWriting.signalAll();
+        } finally {
+            gate.unlock();
+        }
+    }
+
+    @Override
+    public void afterWrite() {
+        lock.unlockWrite(writeStamp);
+    }
+
+    @Override
+    public long tryOptimisticRead() {
+        return lock.tryOptimisticRead();
+    }
+
+    @Override
+    public boolean validate(long stamp) {
+        return stamp != 0 && lock.validate(stamp);
+    }
+}
@@ -2,17 +2,18 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
+import java.util.Queue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
-import org.w3c.dom.views.AbstractView;
-
-import bguspl.set.UserInterface;
+import bguspl.set.UserInterfaceDiff;
 
 /**
  * This class contains the data that is visible to the player.
@@ -27,56 +28,99 @@ public class Table {
     private final Env env;
 
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * Mapping between a slot and the card placed in it (-1 if none).
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
+    protected final int[] slotToCard; // card per slot (if any)
 
     /**
-     * Mapping between a card and the slot it is in (null if none).
+     * Mapping between a card and the slot it is in (-1 if none).
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    protected final int[] cardToSlot; // slot per card (if any)
 
-     /**
-     * Mapping between a card and the slot it is in (null if none).
+    /**
+     * The players' tokens per slot: bit p % 64 of slotTokens[slot * playerWords + p / 64] is set iff player p has a
+     * token on the slot.
+     */
+    private final AtomicLongArray slotTokens;
+
+    /**
+     * The slots holding each player's tokens: bit s % 64 of playerSlots[p * slotWords + s / 64] is set iff player p
+     * has a token on slot s.
+     */
+    private final AtomicLongArray playerSlots;
+
+    private final int playerWords;
+    private final int slotWords;
+
+    /**
+     * The legal sets among the cards currently on the table (each one sorted by card id).
      */
-    protected final Boolean[][] tokens; // slot per card (if any)
+    private final List<int[]> sets;
 
     protected AtomicBoolean removingCards;
 
-    protected int activePlayers;
-    protected int activeDealer;
-    protected int waitingDealer;
+    /**
+     * The number of card changes made to the table so far (changed by the dealer thread only).
+     */
+    private volatile long version;
 
+    /**
+     * The kinds of user interface changes (see pendingChanges).
+     */
+    private static final int PLACE_CARD = UserInterfaceDiff.PLACE_CARD;
+    private static final int REMOVE_CARD = UserInterfaceDiff.REMOVE_CARD;
+    private static final int PLACE_TOKEN = UserInterfaceDiff.PLACE_TOKEN;
+    private static final int REMOVE_TOKEN = UserInterfaceDiff.REMOVE_TOKEN;
+    private static final int REMOVE_TOKENS = UserInterfaceDiff.REMOVE_TOKENS;
 
+    /**
+     * True iff the dealer is in the middle of a table transaction (guarded by pendingChanges).
+     */
+    private boolean inTransaction;
 
+    /**
+     * True iff the dealer is showing the changes of a committed transaction (guarded by pendingChanges).
+     */
+    private boolean showingChanges;
 
+    /**
+     * The card and token changes that are yet to be shown, in order: {kind, slot, card or player, delayed}. Changes
+     * are queued here while a transaction is open and while its changes are shown (guarded by itself).
+     */
+    private final Queue<int[]> pendingChanges;
+
+    /**
+     * The committed changes that are shown together, in one user interface batch (used by the dealer thread only).
+     */
+    private final UserInterfaceDiff batch = new UserInterfaceDiff();
+
+    /**
+     * The players-dealer readers-writer lock of the table.
+     */
+    private final TableLock lock;
 
     /**
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (-1 if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (-1 if none).
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
+    public Table(Env env, int[] slotToCard, int[] cardToSlot) {
 
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        this.tokens = new Boolean[slotToCard.length][env.config.players];
+        this.playerWords = (env.config.players + 63) >> 6;
+        this.slotWords = (slotToCard.length + 63) >> 6;
+        this.slotTokens = new AtomicLongArray(slotToCard.length * playerWords);
+        this.playerSlots = new AtomicLongArray(env.config.players * slotWords);
+        this.sets = new ArrayList<>();
+        this.pendingChanges = new ArrayDeque<>();
         this.removingCards=new AtomicBoolean(false);
-        this.activeDealer=0;
-        this.activePlayers=0;
-        this.waitingDealer=0;
-        for(int i=0; i<tokens.length; i++){
-            for(int j=0; j<tokens[0].length; j++){
-                tokens[i][j]=false;
-            }
-        }
-        for(Integer slot: slotToCard)
-            slot = null;
-        for(Integer card: cardToSlot)
-            card=null;
+        this.lock = TableLock.create(env.config);
+        Arrays.fill(slotToCard, -1);
+        Arrays.fill(cardToSlot, -1);
         
     }
 
@@ -87,15 +131,14 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, new int[env.config.maxTableSize], new int[env.config.deckSize]);
     }
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        sets.forEach(set -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
             List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
@@ -103,6 +146,56 @@ public class Table {
         });
     }
 
+    /**
+     * @return - the number of legal sets among the cards on the table.
+     */
+    public int setCount() {
+        return sets.size();
+    }
+
+    /**
+     * @return - true iff there is a legal set among the cards on the table.
+     */
+    public boolean anySet() {
+        return !sets.isEmpty();
+    }
+
+    /**
+     * @return - the legal sets among the cards on the table (a live view, kept up to date by the table's mutators).
+     */
+    public List<int[]> sets() {
+        return Collections.unmodifiableList(sets);
+    }
+
+    /**
+     * Adds to the set index every legal set that a newly placed card forms with the other cards on the table.
+     * @param card - the card that was placed.
+     */
+    private void indexSetsWith(int card) {
+        int n = 0;
+        int[] others = new int[slotToCard.length];
+        for (int other : slotToCard)
+            if (other != -1 && other != card) others[n++] = other;
+        Arrays.sort(others, 0, n);
+        env.util.forEachSetWith(card, others, n, other -> cardToSlot[other] != -1, set -> {
+            int[] sorted = set.clone();
+            Arrays.sort(sorted);
+            sets.add(sorted);
+        });
+    }
+
+    /**
+     * Removes from the set index every legal set that contains a removed card.
+     * @param card - the card that was removed.
+     */
+    private void unindexSetsWith(int card) {
+        sets.removeIf(set -> {
+            for (int c : set)
+                if (c == card) return true;
+            return false;
+        });
+    }
+
     /**
      * Count the number of cards currently on the table.
      *
@@ -110,12 +203,22 @@ public class Table {
      */
     public int countCards() {
         int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
+        for (int card : slotToCard)
+            if (card != -1)
                 ++cards;
         return cards;
     }
 
+    /**
+     * The table's version: it changes whenever a card is placed or removed, so cards read at the same version are
+     * still in the same slots.
+     *
+     * @return - the current version of the table.
+     */
+    public long version() {
+        return version;
+    }
+
     /**
      * Places a card on the table in a grid slot.
      * @param card - the card id to place in the slot.
@@ -124,13 +227,11 @@ public class Table {
      * @post - the card placed is on the table, in the assigned slot.
      */
     public void placeCard(int card, int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {};
         cardToSlot[card] = slot;
         slotToCard[slot] = card;
-        env.ui.placeCard(card, slot);
-        // TODO implement
+        indexSetsWith(card);
+        ++version;
+        showChange(PLACE_CARD, slot, card, true);
     }
 
     /**
@@ -138,16 +239,126 @@ public class Table {
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {};
         int card = slotToCard[slot];
-        slotToCard[slot] = null;
-        cardToSlot[card] = null;
-        env.ui.removeCard(slot);
+        slotToCard[slot] = -1;
+        cardToSlot[card] = -1;
+        unindexSetsWith(card);
+        ++version;
+        showChange(REMOVE_CARD, slot, -1, true);
+    }
+
+    /**
+     * Shows a card or token change in the user interface - right away, or once the changes queued before it are shown.
+     * @param kind    - the kind of change (PLACE_CARD, REMOVE_CARD, PLACE_TOKEN, REMOVE_TOKEN or REMOVE_TOKENS).
+     * @param slot    - the slot that changed.
+     * @param arg     - the card placed, or the player whose token changed (unused otherwise).
+     * @param delayed - true iff the table delay should be played before showing the change.
+     */
+    private void showChange(int kind, int slot, int arg, boolean delayed) {
+        synchronized (pendingChanges) {
+            if (inTransaction || showingChanges) {
+                pendingChanges.add(new int[]{kind, slot, arg, delayed ? 1 : 0});
+                return;
+            }
         }
+        playChange(kind, slot, arg, delayed);
+    }
 
-        // TODO implement
+    private void playChange(int kind, int slot, int arg, boolean delayed) {
+        if (delayed) {
+            try {
+                env.clock.sleep(env.config.tableDelayMillis);
+            } catch (InterruptedException ignored) {};
+        }
+        switch (kind) {
+            case PLACE_CARD: env.ui.placeCard(arg, slot); break;
+            case REMOVE_CARD: env.ui.removeCard(slot); break;
+            case PLACE_TOKEN: env.ui.placeToken(arg, slot); break;
+            case REMOVE_TOKEN: env.ui.removeToken(arg, slot); break;
+            case REMOVE_TOKENS: env.ui.removeTokens(slot); break;
+        }
+    }
+
+    /**
+     * Starts a table transaction: takes the table's write lock. Until commit is called, card and token changes are
+     * applied to the table data only; their display is deferred to the commit.
+     */
+    public void beginTransaction() {
+        beforeWrite();
+        synchronized (pendingChanges) {
+            inTransaction = true;
+        }
+    }
+
+    /**
+     * Commits the current transaction: releases the table's write lock and only then shows the transaction's card and
+     * token changes in order, with the table delay before each card change, so the players may use the table in the
+     * meantime. The players' token changes made meanwhile are shown after them. The changes between two delays are
+     * shown as one batch (e.g. clearing the whole table is a single user interface update).
+     */
+    public void commit() {
+        synchronized (pendingChanges) {
+            inTransaction = false;
+            showingChanges = true;
+        }
+        afterWrite();
+        while (true) {
+            int[] change;
+            synchronized (pendingChanges) {
+                change = pendingChanges.poll();
+                if (change == null && batch.isEmpty()) {
+                    showingChanges = false;
+                    return;
+                }
+            }
+            if (change == null || change[3] == 1) {
+                showBatch(); // shown before the delay (or before the queue is found empty again)
+                if (change == null) continue;
+                try {
+                    env.clock.sleep(env.config.tableDelayMillis);
+                } catch (InterruptedException ignored) {};
+            }
+            batch.add(change[0], change[1], change[2]);
+        }
+    }
+
+    private void showBatch() {
+        if (batch.isEmpty()) return;
+        env.ui.applyDiff(batch);
+        batch.clear();
+    }
+
+    /**
+     * Moves a card, along with the players' tokens on it, to an empty slot. The move is shown as one change, after a
+     * single table delay.
+     * @param from - the slot of the card.
+     * @param to   - the empty slot to move the card to.
+     */
+    public void moveCard(int from, int to) {
+        int card = slotToCard[from];
+        slotToCard[from] = -1;
+        slotToCard[to] = card;
+        cardToSlot[card] = to;
+        ++version;
+
+        long[] moved = new long[playerWords];
+        for (int word = 0; word < playerWords; ++word) {
+            moved[word] = slotTokens.getAndSet(from * playerWords + word, 0);
+            slotTokens.set(to * playerWords + word, moved[word]);
+            for (long players = moved[word]; players != 0; players &= players - 1) {
+                int player = (word << 6) + Long.numberOfTrailingZeros(players);
+                clearBit(playerSlots, player * slotWords + (from >> 6), from);
+                setBit(playerSlots, player * slotWords + (to >> 6), to);
+            }
+        }
+
+        showChange(REMOVE_TOKENS, from, -1, true);
+        showChange(REMOVE_CARD, from, -1, false);
+        showChange(PLACE_CARD, to, card, false);
+        for (int word = 0; word < playerWords; ++word)
+            for (long players = moved[word]; players != 0; players &= players - 1)
+                showChange(PLACE_TOKEN, to, (word << 6) + Long.numberOfTrailingZeros(players), false);
+    }
 
     /**
      * Places a player token on a grid slot.
@@ -155,8 +366,10 @@ public class Table {
      * @param slot   - the slot on which to place the token.
      */
     public void placeToken(int player, int slot) {
-        tokens[slot][player]=true;
-        env.ui.placeToken(player, slot);
+        if (setBit(slotTokens, slot * playerWords + (player >> 6), player)) {
+            setBit(playerSlots, player * slotWords + (slot >> 6), slot);
+            showChange(PLACE_TOKEN, slot, player, false);
+        }
     }
 
     /**
@@ -166,65 +379,140 @@ public class Table {
      * @return       - true iff a token was successfully removed.
      */
     public boolean removeToken(int player, int slot) {
-        if(tokens[slot][player]==true){
-            tokens[slot][player]=false;
-            env.ui.removeToken(player, slot); //need to check if requiers a pre-check if there's a token
+        if (clearBit(slotTokens, slot * playerWords + (player >> 6), player)) {
+            clearBit(playerSlots, player * slotWords + (slot >> 6), slot);
+            showChange(REMOVE_TOKEN, slot, player, false);
             return true;
         }
         return false;
     }
 
+    /**
+     * Removes the tokens of all the players from a slot.
+     * @param slot    - the slot from which to remove the tokens.
+     * @param removed - called with the id of each player whose token was removed.
+     */
+    public void removeTokens(int slot, IntConsumer removed) {
+        boolean any = false;
+        for (int word = 0; word < playerWords; ++word) {
+            long players = slotTokens.getAndSet(slot * playerWords + word, 0);
+            for (; players != 0; players &= players - 1) {
+                int player = (word << 6) + Long.numberOfTrailingZeros(players);
+                clearBit(playerSlots, player * slotWords + (slot >> 6), slot);
+                removed.accept(player);
+                any = true;
+            }
+        }
+        if (any) showChange(REMOVE_TOKENS, slot, -1, false);
+    }
+
+    /**
+     * @return - true iff the player has a token on the slot.
+     */
+    public boolean hasToken(int player, int slot) {
+        return (slotTokens.get(slot * playerWords + (player >> 6)) & (1L << player)) != 0;
+    }
+
+    /**
+     * Finds the slots on which a player has tokens.
+     * @param player - the player id.
+     * @param slots  - an array to fill with the slots (in increasing order).
+     * @return       - the number of slots found (at most slots.length).
+     */
+    public int tokenSlots(int player, int[] slots) {
+        int count = 0;
+        for (int word = 0; word < slotWords && count < slots.length; ++word)
+            for (long bits = playerSlots.get(player * slotWords + word); bits != 0 && count < slots.length; bits &= bits - 1)
+                slots[count++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+        return count;
+    }
+
+    /**
+     * Atomically sets a bit (bit % 64) of a word.
+     * @return - true iff the bit was not set before.
+     */
+    private static boolean setBit(AtomicLongArray words, int word, int bit) {
+        long mask = 1L << bit, old;
+        do {
+            old = words.get(word);
+            if ((old & mask) != 0) return false;
+        } while (!words.compareAndSet(word, old, old | mask));
+        return true;
+    }
+
+    /**
+     * Atomically clears a bit (bit % 64) of a word.
+     * @return - true iff the bit was set before.
+     */
+    private static boolean clearBit(AtomicLongArray words, int word, int bit) {
+        long mask = 1L << bit, old;
+        do {
+            old = words.get(word);
+            if ((old & mask) == 0) return false;
+        } while (!words.compareAndSet(word, old, old & ~mask));
+        return true;
+    }
+
      public int getCard(int slot) {
         if(slot<0 || slot>slotToCard.length){
             throw new IllegalArgumentException("slot does not exist");
         }
-        if(slotToCard[slot]==null)
-            return -1;
         return slotToCard[slot];
     }
 
+    /**
+     * @return - the first empty overflow slot (i.e. beyond the rows * columns grid), or -1 if there is none.
+     */
+    public int emptyOverflowSlot() {
+        for (int slot = env.config.tableSize; slot < slotToCard.length; slot++)
+            if (slotToCard[slot] == -1) return slot;
+        return -1;
+    }
+
     public void clearCards(){
-        for(int i=0; i<env.config.tableSize; i++){
-            slotToCard[i] = null;
-            env.ui.removeCard(i);
+        for(int i=0; i<slotToCard.length; i++){
+            slotToCard[i] = -1;
+            showChange(REMOVE_CARD, i, -1, false);
 
         }
         for(int i=0; i<env.config.deckSize; i++){
-            cardToSlot[i] = null;
+            cardToSlot[i] = -1;
         }
+        sets.clear();
+        ++version;
     }
 
 
     //------READER-WRITER-LOCK-------//
-    protected synchronized void beforeRead() {
-        while (!(waitingDealer == 0 && activeDealer == 0))
-        try{
-            wait();
-        }
-        catch(InterruptedException e){break;};
-        activePlayers++;
-    }
-    
-    protected synchronized void afterRead() {
-        activePlayers--;
-        notifyAll();
-    }
-    
-    protected synchronized void beforeWrite() {
-        waitingDealer=1;
-        while (!(activePlayers == 0 && activeDealer == 0))
-        try{
-            wait();
-        }
-        catch(InterruptedException e){break;};
-        waitingDealer=0;
-        activeDealer=1;
-    }
-    
-    protected synchronized void afterWrite() {
-        activeDealer=0;
-        notifyAll();
-    }    
+    protected void beforeRead() {
+        lock.beforeRead();
+    }
+
+    protected void afterRead() {
+        lock.afterRead();
+    }
+
+    protected void beforeWrite() {
+        lock.beforeWrite();
+    }
+
+    protected void afterWrite() {
+        lock.afterWrite();
+    }
+
+    /**
+     * Starts an optimistic read of the table (see TableLock).
+     */
+    protected long tryOptimisticRead() {
+        return lock.tryOptimisticRead();
+    }
+
+    /**
+     * Validates an optimistic read of the table (see TableLock).
+     */
+    protected boolean validate(long stamp) {
+        return lock.validate(stamp);
+    }
 
 
 }
@@ -0,0 +1,57 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+
+/**
+ * A readers-writer lock for the table: the players read (and place or remove their own tokens), the dealer writes.
+ * Implementations must prefer the dealer (i.e. no new reader may enter while the dealer is waiting).
+ */
+public interface TableLock {
+
+    /**
+     * Blocks until the table may be read.
+     */
+    void beforeRead();
+
+    /**
+     * Called when done reading the table.
+     */
+    void afterRead();
+
+    /**
+     * Blocks until the table may be written (i.e. there are no readers).
+     */
+    void beforeWrite();
+
+    /**
+     * Called when done writing the table.
+     */
+    void afterWrite();
+
+    /**
+     * Starts an optimistic (non-blocking) read of the table.
+     *
+     * @return - a stamp to validate the read with, or 0 if the table is being written (or if the lock does not support
+     *         optimistic reads) - a 0 stamp never validates.
+     */
+    long tryOptimisticRead();
+
+    /**
+     * Checks that the table was not written since an optimistic read started.
+     *
+     * @param stamp - the stamp returned by tryOptimisticRead.
+     * @return - true iff the values read since tryOptimisticRead are consistent.
+     */
+    boolean validate(long stamp);
+
+    /**
+     * Creates the table lock selected in the configuration.
+     *
+     * @param config - the game configuration.
+     * @return - a stamped lock if config.tableLock is "stamped", the monitor based lock otherwise.
+     */
+    static TableLock create(Config config) {
+        if ("stamped".equalsIgnoreCase(config.tableLock)) return new StampedTableLock();
+        return new MonitorTableLock();
+    }
+}
@@ -0,0 +1,135 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLogTest {
+
+    private Logger logger;
+    private List<String> messages;
+    private List<LogRecord> records;
+
+    /**
+     * Counted down when the writer thread writes its first record, and awaited by it before writing it.
+     */
+    private CountDownLatch writing;
+    private CountDownLatch release;
+
+    @BeforeEach
+    void setUp() {
+        messages = Collections.synchronizedList(new ArrayList<>());
+        records = Collections.synchronizedList(new ArrayList<>());
+        writing = new CountDownLatch(1);
+        release = new CountDownLatch(0);
+        logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.ALL);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {}
+                messages.add(record.getMessage());
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        });
+    }
+
+    @Test
+    void log_WrapsAroundTheBufferInOrder() {
+        EventLog log = new EventLog(logger, 4, true);
+        for (int i = 0; i < 100; ++i)
+            log.log(Level.INFO, "event %d of %d", i, 100);
+        log.close();
+
+        assertEquals(100, messages.size());
+        for (int i = 0; i < 100; ++i)
+            assertEquals("event " + i + " of 100", messages.get(i));
+        assertEquals(0, log.dropped());
+    }
+
+    @Test
+    void log_DropsAndCountsEventsWhenFull() throws InterruptedException {
+        release = new CountDownLatch(1);
+        EventLog log = new EventLog(logger, 4, false);
+        log.log(Level.INFO, "event %d", 0);
+        writing.await(); // the writer is stuck writing event 0, so the buffer has room for 4 more
+        for (int i = 1; i <= 7; ++i)
+            log.log(Level.INFO, "event %d", i);
+        assertEquals(3, log.dropped());
+
+        release.countDown();
+        log.close();
+        // the drops are reported right after the event that was being written when they happened
+        assertEquals(6, messages.size());
+        assertEquals("event 0", messages.get(0));
+        assertEquals("3 log events were dropped (the event log buffer was full)", messages.get(1));
+        for (int i = 1; i <= 4; ++i)
+            assertEquals("event " + i, messages.get(i + 1));
+    }
+
+    @Test
+    void close_WritesTheRecordedEventsFirst() {
+        EventLog log = new EventLog(logger, 1024, false);
+        for (int i = 0; i < 500; ++i)
+            log.log(Level.INFO, "event %d", i);
+        log.log(Level.WARNING, "last");
+        log.close();
+
+        assertEquals(501, messages.size());
+        assertEquals("event 499", messages.get(499));
+        assertEquals("last", messages.get(500));
+
+        log.log(Level.INFO, "too late");
+        assertEquals(501, messages.size());
+        assertEquals(1, log.dropped());
+    }
+
+    @Test
+    void millis_IsTheTimeTheEventWasRecorded() throws InterruptedException {
+        release = new CountDownLatch(1);
+        EventLog log = new EventLog(logger, 4, false);
+        log.log(Level.INFO, "event %d", 0);
+        writing.await();
+        long before = System.currentTimeMillis();
+        log.log(Level.INFO, "event %d", 1); // recorded now, written only once the writer is released
+        long after = System.currentTimeMillis();
+        Thread.sleep(50);
+        release.countDown();
+        log.close();
+
+        long millis = EventLog.millis(records.get(1));
+        assertTrue(before <= millis && millis <= after, millis + " is not in [" + before + ", " + after + "]");
+    }
+
+    @Test
+    void log_SkipsEventsBelowTheLoggerLevel() {
+        logger.setLevel(Level.WARNING);
+        EventLog log = new EventLog(logger, 4, false);
+        log.log(Level.INFO, "event %d", 0);
+        log.log(Level.WARNING, "warning %d", 1);
+        log.close();
+
+        assertEquals(Collections.singletonList("warning 1"), messages);
+    }
+}
@@ -0,0 +1,60 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameHostTest {
+
+    private static Config config(int humanPlayers, int computerPlayers, int hostThreads, int hostQueuedGames) {
+        Properties properties = new Properties();
+        properties.put("LogLevel", "OFF");
+        properties.put("HumanPlayers", Integer.toString(humanPlayers));
+        properties.put("ComputerPlayers", Integer.toString(computerPlayers));
+        properties.put("TurnTimeoutSeconds", "60");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("HostThreads", Integer.toString(hostThreads));
+        properties.put("HostQueuedGames", Integer.toString(hostQueuedGames));
+        return new Config(Logger.getAnonymousLogger(), properties);
+    }
+
+    @Test
+    void threadsPerGame_CountsDealerPlayersAndComputerPlayers() {
+        assertEquals(1 + 3 + 2, GameHost.threadsPerGame(config(1, 2, 512, 1)));
+        assertEquals(1, GameHost.threadsPerGame(config(0, 0, 512, 1)));
+    }
+
+    @Test
+    void maxRunningGames_FitsTheThreadBudget() throws InterruptedException {
+        Config config = config(0, 2, 12, 1);
+        GameHost host = new GameHost(Logger.getAnonymousLogger(), config);
+        assertEquals(12 / GameHost.threadsPerGame(config), host.maxRunningGames());
+        host.shutdown();
+
+        host = new GameHost(Logger.getAnonymousLogger(), config(0, 2, 1, 1));
+        assertEquals(1, host.maxRunningGames());
+        host.shutdown();
+    }
+
+    @Test
+    void submit_RejectsGamesBeyondTheWorkersAndTheQueue() throws InterruptedException {
+        // games without players never end by themselves, so the first game keeps the only worker busy
+        GameHost host = new GameHost(Logger.getAnonymousLogger(), config(0, 0, 1, 1));
+        CompletableFuture<int[]> running = host.submit();
+        CompletableFuture<int[]> queued = host.submit();
+        assertThrows(RejectedExecutionException.class, host::submit);
+        assertEquals(1, host.queuedGames());
+
+        host.shutdown();
+        assertTrue(running.isDone());
+        assertTrue(queued.isCancelled());
+        assertThrows(RejectedExecutionException.class, host::submit);
+    }
+}
@@ -0,0 +1,148 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UtilImplTest {
+
+    Util util;
+    Config config;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        config = new Config(Logger.getAnonymousLogger(), properties);
+        util = new UtilImpl(config);
+    }
+
+    private List<Integer> fullDeck() {
+        return IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    void findSets_FullDeckHasAllSets() {
+        List<int[]> sets = util.findSets(fullDeck(), Integer.MAX_VALUE);
+
+        // every pair of cards is completed by exactly one card: 81 * 80 / 3!
+        assertEquals(1080, sets.size());
+        Set<String> distinct = new HashSet<>();
+        for (int[] set : sets) {
+            assertTrue(util.testSet(set));
+            distinct.add(Arrays.toString(set));
+        }
+        assertEquals(sets.size(), distinct.size());
+    }
+
+    @Test
+    void findSets_StopsAtCount() {
+        assertEquals(5, util.findSets(fullDeck(), 5).size());
+    }
+
+    @Test
+    void findSets_LargeDeckSearchedInParallel() {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "6");
+        Config large = new Config(Logger.getAnonymousLogger(), properties);
+        Util largeUtil = new UtilImpl(large);
+        List<Integer> deck = IntStream.range(0, large.deckSize).boxed().collect(Collectors.toList());
+
+        // all the sets, in the serial (lexicographic) order: 729 * 728 / 3!
+        List<int[]> sets = largeUtil.findSets(deck, Integer.MAX_VALUE);
+        assertEquals(88452, sets.size());
+        int[] previous = null;
+        for (int[] set : sets) {
+            assertTrue(largeUtil.testSet(set));
+            if (previous != null) {
+                int i = 0;
+                while (previous[i] == set[i]) ++i;
+                assertTrue(previous[i] < set[i]);
+            }
+            previous = set;
+        }
+
+        // stopping at count keeps the first sets
+        List<int[]> first = largeUtil.findSets(deck, 100);
+        assertEquals(100, first.size());
+        for (int i = 0; i < first.size(); ++i)
+            assertArrayEquals(sets.get(i), first.get(i));
+    }
+
+    @Test
+    void streamSets_LazyAndSameAsFindSets() {
+        List<int[]> sets = util.findSets(fullDeck(), 3);
+        List<int[]> streamed = util.streamSets(fullDeck()).limit(3).collect(Collectors.toList());
+        assertEquals(sets.size(), streamed.size());
+        for (int i = 0; i < sets.size(); ++i)
+            assertArrayEquals(sets.get(i), streamed.get(i));
+    }
+
+    @Test
+    void findSets_NoSetAmongCards() {
+        // 0000, 0001, 0010, 0011 - no three of them form a set
+        assertEquals(0, util.findSets(Arrays.asList(0, 1, 3, 4), Integer.MAX_VALUE).size());
+        assertEquals(1, util.findSets(Arrays.asList(0, 1, null, 2), Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void testSet_SameSameOrButDifferent() {
+        assertTrue(util.testSet(new int[]{0, 1, 2}));       // 0000, 0001, 0002
+        assertTrue(util.testSet(new int[]{0, 40, 80}));     // 0000, 1111, 2222
+        assertFalse(util.testSet(new int[]{0, 1, 5}));      // 0000, 0001, 0012
+        assertFalse(util.testSet(new int[]{0, 0, 1}));
+    }
+
+    @Test
+    void testSets_BatchOfCandidates() {
+        boolean[] results = new boolean[3];
+        assertEquals(2, util.testSets(new int[]{0, 1, 2, 0, 1, 5, 0, 40, 80}, results));
+        assertTrue(results[0]);
+        assertFalse(results[1]);
+        assertTrue(results[2]);
+    }
+
+    private static Util utilWithFeatureSize(int featureSize) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", "3");
+        return new UtilImpl(new Config(Logger.getAnonymousLogger(), properties));
+    }
+
+    @Test
+    void forEachSetWith_OneCardSetsFormNoSets() {
+        Util single = utilWithFeatureSize(1);
+        List<int[]> visited = new ArrayList<>();
+        assertEquals(0, single.forEachSetWith(0, new int[0], 0, other -> true, set -> visited.add(set.clone())));
+        assertTrue(visited.isEmpty());
+    }
+
+    @Test
+    void forEachSetWith_PairsAreFilteredByPresent() {
+        Util pairs = utilWithFeatureSize(2);
+        int[] others = {1, 2, 3, 4};
+        List<int[]> visited = new ArrayList<>();
+        assertEquals(2, pairs.forEachSetWith(0, others, others.length, other -> other % 2 == 0,
+                set -> visited.add(set.clone())));
+        assertEquals(2, visited.size());
+        assertArrayEquals(new int[]{0, 2}, visited.get(0));
+        assertArrayEquals(new int[]{0, 4}, visited.get(1));
+        assertEquals(3, pairs.forEachSetWith(0, others, 3, other -> true, null));
+    }
+}
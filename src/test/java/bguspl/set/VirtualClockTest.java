@@ -0,0 +1,62 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualClockTest {
+
+    private static Thread sleeper(VirtualClock clock, long millies, List<String> wakeups) {
+        Thread thread = new Thread(() -> {
+            try {
+                clock.sleep(millies);
+                wakeups.add(millies + "@" + clock.currentTimeMillis());
+            } catch (InterruptedException ignored) {}
+        });
+        clock.register(thread);
+        return thread;
+    }
+
+    @Test
+    void sleep_WakesSleepersInDeadlineOrderWithoutWaiting() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        long start = clock.currentTimeMillis();
+        List<String> wakeups = Collections.synchronizedList(new ArrayList<>());
+        Thread late = sleeper(clock, 60_000, wakeups);
+        Thread early = sleeper(clock, 30_000, wakeups);
+
+        long wallStart = System.nanoTime();
+        late.start();
+        early.start();
+        late.join();
+        early.join();
+        long wallMillis = (System.nanoTime() - wallStart) / 1_000_000;
+
+        assertEquals(2, wakeups.size());
+        assertEquals("30000@" + (start + 30_000), wakeups.get(0));
+        assertEquals("60000@" + (start + 60_000), wakeups.get(1));
+        assertEquals(start + 60_000, clock.currentTimeMillis());
+        assertTrue(wallMillis < 10_000, "a minute of game time took " + wallMillis + "ms");
+    }
+
+    @Test
+    void currentTimeMillis_DoesNotMoveWithoutWaiters() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        long start = clock.currentTimeMillis();
+        Thread.sleep(20);
+        assertEquals(start, clock.currentTimeMillis());
+    }
+
+    @Test
+    void sleep_ReturnsAtOnceForNonPositiveDurations() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        long start = clock.currentTimeMillis();
+        clock.sleep(0);
+        assertEquals(start, clock.currentTimeMillis());
+    }
+}
@@ -0,0 +1,112 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+class DealerTest {
+
+    private Table table;
+    private Dealer dealer;
+    private Player[] players;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("LogLevel", "OFF");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("HumanPlayers", "2");
+        properties.put("ComputerPlayers", "0");
+        properties.put("TableDelaySeconds", "0");
+        Config config = new Config(Logger.getAnonymousLogger(), properties);
+        Env env = new Env(Logger.getAnonymousLogger(), config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        table = new Table(env);
+        players = new Player[config.players];
+        dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; ++i) {
+            // the players' tokens are placed directly on the table below, so they have none left
+            players[i] = spy(new Player(env, dealer, table, i, true));
+            doReturn(0).when(players[i]).getTokensLeft();
+        }
+
+        // slots 0-2 hold the set {0, 1, 2}, slots 0, 3, 4 hold the set {0, 3, 6}, and slot 5 holds card 5 (no set with
+        // the cards of slots 0 and 1)
+        int[] cards = {0, 1, 2, 3, 6, 5};
+        for (int slot = 0; slot < cards.length; ++slot)
+            table.placeCard(cards[slot], slot);
+    }
+
+    private CompletableFuture<Claim.Verdict> claim(int player, long time, long version, int... slots) {
+        for (int slot : slots)
+            table.placeToken(player, slot);
+        return dealer.checkMe(players[player], time, version);
+    }
+
+    private void resolveClaims() {
+        table.beginTransaction();
+        dealer.removeCardsFromTable();
+        table.commit();
+    }
+
+    @Test
+    void removeCardsFromTable_EarlierOfOverlappingClaimsWins() {
+        long version = table.version();
+        // the later claim is submitted first: the claims are resolved by the time of their key presses
+        CompletableFuture<Claim.Verdict> later = claim(0, 200, version, 0, 1, 2);
+        CompletableFuture<Claim.Verdict> earlier = claim(1, 100, version, 0, 3, 4);
+
+        resolveClaims();
+
+        assertEquals(Claim.Verdict.POINT, earlier.join());
+        assertEquals(Claim.Verdict.NONE, later.join());
+        for (int slot : new int[]{0, 3, 4})
+            assertEquals(-1, table.slotToCard[slot]);
+        assertEquals(1, table.slotToCard[1]);
+        assertEquals(2, table.slotToCard[2]);
+        assertFalse(table.hasToken(0, 0));
+        assertTrue(table.hasToken(0, 1));
+    }
+
+    @Test
+    void removeCardsFromTable_StaleClaimIsVerifiedAgain() {
+        long stale = table.version();
+        table.removeCard(2);
+        table.placeCard(5 + 27, 2); // slots 0-2 no longer hold a set
+        assertNotEquals(stale, table.version());
+
+        CompletableFuture<Claim.Verdict> claim = claim(0, 100, stale, 0, 1, 2);
+        resolveClaims();
+
+        assertEquals(Claim.Verdict.PENALTY, claim.join());
+        assertEquals(0, table.slotToCard[0]);
+        assertEquals(1, table.slotToCard[1]);
+    }
+
+    @Test
+    void removeCardsFromTable_StaleClaimOnASetStillScores() {
+        long stale = table.version();
+        table.removeCard(5);
+        table.placeCard(7, 5); // a change elsewhere on the table
+
+        CompletableFuture<Claim.Verdict> claim = claim(0, 100, stale, 0, 1, 2);
+        resolveClaims();
+
+        assertEquals(Claim.Verdict.POINT, claim.join());
+        for (int slot = 0; slot < 3; ++slot)
+            assertEquals(-1, table.slotToCard[slot]);
+    }
+}
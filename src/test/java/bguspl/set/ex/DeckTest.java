@@ -0,0 +1,87 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeckTest {
+
+    private static final int DECK_SIZE = 81;
+
+    private Deck deck;
+
+    @BeforeEach
+    void setUp() {
+        deck = new Deck(DECK_SIZE);
+    }
+
+    /**
+     * Checks that the deck holds exactly the expected cards.
+     */
+    private void assertCards(List<Integer> expected) {
+        assertEquals(expected.size(), deck.size());
+        List<Integer> cards = new ArrayList<>();
+        deck.addTo(cards);
+        Collections.sort(cards);
+        List<Integer> sorted = new ArrayList<>(expected);
+        Collections.sort(sorted);
+        assertEquals(sorted, cards);
+        for (int card = 0; card < DECK_SIZE; ++card)
+            assertEquals(expected.contains(card), deck.contains(card), "card " + card);
+    }
+
+    @Test
+    void draw_DrawsEveryCardExactlyOnce() {
+        boolean[] drawn = new boolean[DECK_SIZE];
+        for (int i = 0; i < DECK_SIZE; ++i) {
+            int card = deck.draw();
+            assertFalse(drawn[card], "card " + card + " was drawn twice");
+            assertFalse(deck.contains(card));
+            drawn[card] = true;
+            assertEquals(DECK_SIZE - i - 1, deck.size());
+        }
+        assertTrue(deck.isEmpty());
+    }
+
+    @Test
+    void remove_KeepsTheIndexConsistent() {
+        List<Integer> expected = new ArrayList<>();
+        for (int card = 0; card < DECK_SIZE; ++card)
+            expected.add(card);
+
+        // remove from the front, the back and the middle of the deck
+        for (int card : new int[]{0, DECK_SIZE - 1, 40, 1, 39, 41}) {
+            deck.remove(card);
+            expected.remove(Integer.valueOf(card));
+            assertCards(expected);
+        }
+
+        // the moved cards can still be removed and drawn
+        deck.add(40);
+        expected.add(40);
+        assertCards(expected);
+        deck.remove(DECK_SIZE - 2);
+        expected.remove(Integer.valueOf(DECK_SIZE - 2));
+        assertCards(expected);
+        while (!deck.isEmpty())
+            expected.remove(Integer.valueOf(deck.draw()));
+        assertTrue(expected.isEmpty());
+    }
+
+    @Test
+    void add_ReturnsDrawnCards() {
+        int first = deck.draw();
+        int second = deck.draw();
+        deck.add(first);
+        assertTrue(deck.contains(first));
+        assertFalse(deck.contains(second));
+        assertEquals(DECK_SIZE - 1, deck.size());
+    }
+}
@@ -0,0 +1,73 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SetTrackerTest {
+
+    private Config config;
+    private Util util;
+    private SetTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "3");
+        config = new Config(Logger.getAnonymousLogger(), properties);
+        util = new UtilImpl(config);
+        tracker = new SetTracker(new Env(Logger.getAnonymousLogger(), config, new TableTest.MockUserInterface(), util));
+    }
+
+    private long countSets(List<Integer> cards) {
+        return util.findSets(cards, Integer.MAX_VALUE).size();
+    }
+
+    @Test
+    void remaining_FullDeck() {
+        List<Integer> deck = new ArrayList<>();
+        for (int card = 0; card < config.deckSize; ++card)
+            deck.add(card);
+        assertEquals(countSets(deck), tracker.remaining());
+        assertTrue(tracker.anySetLeft());
+    }
+
+    @Test
+    void collect_MatchesFindSetsAfterEachCard() {
+        List<Integer> inPlay = new ArrayList<>();
+        for (int card = 0; card < config.deckSize; ++card)
+            inPlay.add(card);
+        List<Integer> order = new ArrayList<>(inPlay);
+        Collections.shuffle(order, new Random(7));
+
+        for (int card : order) {
+            tracker.collect(card);
+            inPlay.remove(Integer.valueOf(card));
+            assertEquals(countSets(inPlay), tracker.remaining(), "after collecting card " + card);
+        }
+        assertFalse(tracker.anySetLeft());
+    }
+
+    @Test
+    void collect_IgnoresCardsCollectedBefore() {
+        tracker.collect(5);
+        long remaining = tracker.remaining();
+        tracker.collect(5);
+        assertEquals(remaining, tracker.remaining());
+    }
+}
@@ -0,0 +1,179 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class TableLockTest {
+
+    /**
+     * A thread that takes the lock as a reader or as the dealer, and holds it until released.
+     */
+    private static class Holder extends Thread {
+
+        private final TableLock lock;
+        private final boolean dealer;
+        private final AtomicBoolean holding = new AtomicBoolean();
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private Holder(TableLock lock, boolean dealer) {
+            this.lock = lock;
+            this.dealer = dealer;
+            setDaemon(true);
+            start();
+        }
+
+        @Override
+        public void run() {
+            if (dealer) lock.beforeWrite();
+            else lock.beforeRead();
+            holding.set(true);
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {}
+            holding.set(false);
+            if (dealer) lock.afterWrite();
+            else lock.afterRead();
+        }
+
+        /**
+         * Waits until the thread holds the lock.
+         */
+        private void awaitHolding() throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!holding.get()) {
+                if (System.nanoTime() > deadline) fail(getName() + " did not get the lock");
+                Thread.sleep(1);
+            }
+        }
+
+        /**
+         * Waits until the thread is blocked, and checks that it does not hold the lock.
+         */
+        private void assertBlocked() throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (getState() != State.WAITING && getState() != State.BLOCKED) {
+                if (System.nanoTime() > deadline) fail(getName() + " did not block");
+                Thread.sleep(1);
+            }
+            assertFalse(holding.get());
+        }
+
+        private void finish() throws InterruptedException {
+            release.countDown();
+            join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(isAlive());
+        }
+    }
+
+    private static void assertWriteExcludesReaders(TableLock lock) throws InterruptedException {
+        Holder dealer = new Holder(lock, true);
+        dealer.awaitHolding();
+        Holder reader = new Holder(lock, false);
+        reader.assertBlocked();
+        dealer.finish();
+        reader.awaitHolding();
+
+        Holder next = new Holder(lock, true);
+        next.assertBlocked(); // the dealer waits for the reader to leave
+        reader.finish();
+        next.awaitHolding();
+        next.finish();
+    }
+
+    private static void assertReadersShareTheTable(TableLock lock) throws InterruptedException {
+        Holder first = new Holder(lock, false);
+        Holder second = new Holder(lock, false);
+        first.awaitHolding();
+        second.awaitHolding();
+        first.finish();
+        second.finish();
+    }
+
+    private static void assertDealerIsPreferred(TableLock lock) throws InterruptedException {
+        Holder reader = new Holder(lock, false);
+        reader.awaitHolding();
+        Holder dealer = new Holder(lock, true);
+        dealer.assertBlocked();
+
+        // a reader that comes while the dealer waits must not overtake it
+        Holder late = new Holder(lock, false);
+        late.assertBlocked();
+        reader.finish();
+        dealer.awaitHolding();
+        assertFalse(late.holding.get());
+        dealer.finish();
+        late.awaitHolding();
+        late.finish();
+    }
+
+    @Test
+    void monitor_WriteExcludesReaders() throws InterruptedException {
+        assertWriteExcludesReaders(new MonitorTableLock());
+    }
+
+    @Test
+    void monitor_ReadersShareTheTable() throws InterruptedException {
+        assertReadersShareTheTable(new MonitorTableLock());
+    }
+
+    @Test
+    void monitor_DealerIsPreferred() throws InterruptedException {
+        assertDealerIsPreferred(new MonitorTableLock());
+    }
+
+    @Test
+    void monitor_OptimisticReadsFallBack() {
+        TableLock lock = new MonitorTableLock();
+        long stamp = lock.tryOptimisticRead();
+        assertEquals(0, stamp);
+        assertFalse(lock.validate(stamp));
+    }
+
+    @Test
+    void stamped_WriteExcludesReaders() throws InterruptedException {
+        assertWriteExcludesReaders(new StampedTableLock());
+    }
+
+    @Test
+    void stamped_ReadersShareTheTable() throws InterruptedException {
+        assertReadersShareTheTable(new StampedTableLock());
+    }
+
+    @Test
+    void stamped_DealerIsPreferred() throws InterruptedException {
+        assertDealerIsPreferred(new StampedTableLock());
+    }
+
+    @Test
+    void stamped_OptimisticReadIsValidatedAgainstWrites() throws InterruptedException {
+        TableLock lock = new StampedTableLock();
+        long stamp = lock.tryOptimisticRead();
+        assertNotEquals(0, stamp);
+        assertTrue(lock.validate(stamp));
+
+        // a reader does not invalidate the optimistic read
+        Holder reader = new Holder(lock, false);
+        reader.awaitHolding();
+        assertTrue(lock.validate(stamp));
+        reader.finish();
+
+        // while the dealer writes, no optimistic read starts, and the earlier one no longer validates
+        Holder dealer = new Holder(lock, true);
+        dealer.awaitHolding();
+        assertEquals(0, lock.tryOptimisticRead());
+        assertFalse(lock.validate(0));
+        assertFalse(lock.validate(stamp));
+        dealer.finish();
+        assertFalse(lock.validate(stamp));
+        assertTrue(lock.validate(lock.tryOptimisticRead()));
+    }
+}
@@ -4,20 +4,32 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TableTest {
 
     Table table;
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private int[] slotToCard;
+    private int[] cardToSlot;
+    private Config config;
+    private MockLogger logger;
 
     @BeforeEach
     void setUp() {
@@ -30,10 +42,10 @@ class TableTest {
         properties.put("TableDelaySeconds", "0");
         properties.put("PlayerKeys1", "81,87,69,82");
         properties.put("PlayerKeys2", "85,73,79,80");
-        MockLogger logger = new MockLogger();
-        Config config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        logger = new MockLogger();
+        config = new Config(logger, properties);
+        slotToCard = new int[config.tableSize];
+        cardToSlot = new int[config.deckSize];
 
         Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
@@ -58,8 +70,8 @@ class TableTest {
     private void placeSomeCardsAndAssert() throws InterruptedException {
         table.placeCard(8, 2);
 
-        assertEquals(8, (int) slotToCard[2]);
-        assertEquals(2, (int) cardToSlot[8]);
+        assertEquals(8, slotToCard[2]);
+        assertEquals(2, cardToSlot[8]);
     }
 
     @Test
@@ -95,6 +107,110 @@ class TableTest {
         placeSomeCardsAndAssert();
     }
 
+    @Test
+    void placeCard_IndexesSetsOnTable() {
+        Env env = new Env(logger, config, new MockUserInterface(), new UtilImpl(config));
+        table = new Table(env, slotToCard, cardToSlot);
+
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        table.placeCard(5, 2);
+        assertFalse(table.anySet());
+
+        table.placeCard(2, 3);
+        assertEquals(1, table.setCount());
+        assertArrayEquals(new int[]{0, 1, 2}, table.sets().get(0));
+
+        table.removeCard(1);
+        assertEquals(0, table.setCount());
+    }
+
+    @Test
+    void placeCard_ChangesVersion() {
+        long version = table.version();
+        table.placeCard(4, 1);
+        assertNotEquals(version, version = table.version());
+        table.placeToken(0, 1);
+        assertEquals(version, table.version());
+        table.removeCard(1);
+        assertNotEquals(version, table.version());
+    }
+
+    @Test
+    void placeToken_TracksSlotsPerPlayer() {
+        fillAllSlots();
+        table.placeToken(1, 3);
+        table.placeToken(1, 0);
+        table.placeToken(0, 3);
+
+        int[] slots = new int[3];
+        assertEquals(2, table.tokenSlots(1, slots));
+        assertEquals(0, slots[0]);
+        assertEquals(3, slots[1]);
+
+        List<Integer> removed = new ArrayList<>();
+        table.removeTokens(3, removed::add);
+        assertEquals(Arrays.asList(0, 1), removed);
+        assertFalse(table.hasToken(0, 3));
+        assertTrue(table.hasToken(1, 0));
+        assertEquals(1, table.tokenSlots(1, slots));
+        assertFalse(table.removeToken(1, 3));
+    }
+
+    @Test
+    void commit_ShowsTokenAndCardChangesTogether() {
+        List<String> shown = new ArrayList<>();
+        Env env = new Env(logger, config, new MockUserInterface() {
+            @Override
+            public void removeCard(int slot) {
+                shown.add("card " + slot);
+            }
+
+            @Override
+            public void removeToken(int player, int slot) {
+                shown.add("token " + slot);
+            }
+        }, new MockUtil());
+        table = new Table(env, slotToCard, cardToSlot);
+        fillAllSlots();
+        table.placeToken(0, 2);
+
+        table.beginTransaction();
+        table.removeToken(0, 2);
+        table.removeCard(2);
+        assertTrue(shown.isEmpty());
+        table.commit();
+        assertEquals(Arrays.asList("token 2", "card 2"), shown);
+    }
+
+    @Test
+    void moveCard_MovesTokens() {
+        table.placeCard(7, 3);
+        table.placeToken(1, 3);
+        long version = table.version();
+
+        table.moveCard(3, 0);
+        assertEquals(7, slotToCard[0]);
+        assertEquals(-1, slotToCard[3]);
+        assertEquals(0, cardToSlot[7]);
+        assertTrue(table.hasToken(1, 0));
+        assertFalse(table.hasToken(1, 3));
+        int[] slots = new int[3];
+        assertEquals(1, table.tokenSlots(1, slots));
+        assertEquals(0, slots[0]);
+        assertNotEquals(version, table.version());
+    }
+
+    @Test
+    void clearCards_ChangesVersion() {
+        table.placeCard(7, 3);
+        long version = table.version();
+
+        table.clearCards();
+        assertEquals(-1, slotToCard[3]);
+        assertNotEquals(version, table.version());
+    }
+
     static class MockUserInterface implements UserInterface {
         @Override
         public void dispose() {}
@@ -107,6 +223,10 @@ class TableTest {
         @Override
         public void setElapsed(long millies) {}
         @Override
+        public void setCountdownDeadline(long deadline, long warnMillies) {}
+        @Override
+        public void setElapsedSince(long start) {}
+        @Override
         public void setScore(int player, int score) {}
         @Override
         public void setFreeze(int player, long millies) {}
@@ -138,11 +258,31 @@ class TableTest {
             return false;
         }
 
+        @Override
+        public int testSets(int[] cards, boolean[] results) {
+            return 0;
+        }
+
+        @Override
+        public int completeSet(int[] cards) {
+            return -1;
+        }
+
+        @Override
+        public long forEachSetWith(int card, int[] others, int count, IntPredicate present, Consumer<int[]> visitor) {
+            return 0;
+        }
+
         @Override
         public List<int[]> findSets(List<Integer> deck, int count) {
             return null;
         }
 
+        @Override
+        public Stream<int[]> streamSets(List<Integer> deck) {
+            return Stream.empty();
+        }
+
         @Override
         public void spin() {}
     }